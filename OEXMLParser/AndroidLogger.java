@@ -0,0 +1,19 @@
+package com.odie.animehub;
+
+import android.util.Log;
+
+/**
+ * FeedLogger that logs to logcat.
+ */
+public class AndroidLogger implements FeedLogger {
+
+    @Override
+    public void debug(String tag, String message) {
+        Log.d(tag, message);
+    }
+
+    @Override
+    public void error(String tag, String message, Throwable error) {
+        Log.e(tag, message, error);
+    }
+}
@@ -1,273 +1,65 @@
 package com.odie.animehub;
 
 import android.os.AsyncTask;
-import android.util.Base64;
 import android.util.Log;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserFactory;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by Odie on 03/10/14.
+ *
+ * Android front end to FeedParser, adding methods that fetch on an AsyncTask and hand the
+ * results back on the UI thread. Everything else, including the _Support methods, runs on any JVM.
  */
-public class OEXMLParser {
+public class OEXMLParser extends FeedParser {
 
     private static final String TAG = OEXMLParser.class.getSimpleName();
 
-    private String urlString;
-    private XmlPullParserFactory xmlFactoryObject;
-    private ArrayList<String> titles;
-    private ArrayList<String> links;
-    private ArrayList<String> descriptions;
-    private ArrayList<String> imageURLS;
-    private ArrayList<HashMap<String, String>> results;
-    public volatile boolean parsingComplete = true;
-
     /** CONSTRUCTOR **/
     public OEXMLParser(String url){
-        this.urlString = url;
-        this.results = new ArrayList<HashMap<String, String>>();
-        this.titles = new ArrayList<String>();
-        this.links = new ArrayList<String>();
-        this.descriptions = new ArrayList<String>();
-        this.imageURLS = new ArrayList<String>();
-    }
-
-    /** GETTERS AND SETTERS **/
-    public String getUrlString() {
-        return urlString;
-    }
-
-    public void setUrlString(String urlString) {
-        this.urlString = urlString;
-    }
-
-    public XmlPullParserFactory getXmlFactoryObject() {
-        return xmlFactoryObject;
-    }
-
-    public void setXmlFactoryObject(XmlPullParserFactory xmlFactoryObject) {
-        this.xmlFactoryObject = xmlFactoryObject;
-    }
-
-    public ArrayList<HashMap<String, String>> getResults() {
-        return results;
-    }
-
-    public void setResults(ArrayList<HashMap<String, String>> results) {
-        this.results = results;
-    }
-
-    public boolean isParsingComplete() {
-        return parsingComplete;
-    }
-
-    public void setParsingComplete(boolean parsingComplete) {
-        this.parsingComplete = parsingComplete;
+        super(url);
+        setLogger(new AndroidLogger());
     }
 
     /**
      * Regular Java method to fetch xml data without Android API support
+     *
+     * @return the pending results, which are also available from getResults() once complete.
      */
-    public void fetchXML_Support(){
-
-        Thread thread = new Thread(new Runnable(){
-            @Override
-            public void run() {
-                try {
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection)
-                            url.openConnection();
-                    conn.setReadTimeout(20000 /* milliseconds */);
-                    conn.setConnectTimeout(30000 /* milliseconds */);
-                    conn.setRequestMethod("GET");
-                    conn.setDoInput(true);
-                    conn.connect();
-                    InputStream stream = conn.getInputStream();
-
-                    // Get XML string and escape it
-                    String XMLString = getStringForXMLData(stream);
-                    String escapedXMLString = removeHTMLEntities(XMLString);
-
-                    if(escapedXMLString.equalsIgnoreCase("No results")){
-                        results.clear();
-                        parsingComplete = false;
-                        stream.close();
-                        return;
-                    }
-
-                    // Convert escaped string back to stream data
-                    stream = new ByteArrayInputStream(escapedXMLString.getBytes("UTF-8"));
-
-
-                    xmlFactoryObject = XmlPullParserFactory.newInstance();
-                    XmlPullParser myParser = xmlFactoryObject.newPullParser();
-
-                    myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-                    myParser.setInput(stream, null);
-                    parseXMLAndStoreIt(myParser);
-                    stream.close();
-
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    parsingComplete = false;
-                }
-            }
-        });
-
-        thread.start();
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXML_Support(){
+        return fetch();
     }
 
     /**
      * Method to fetch xml asynchronously using Android API.
      *
      * @param callback a bit of code that is executed on completion of the xml fetch.
+     * @return the pending results, completed on the UI thread just before the callback is called.
      */
-    public void fetchXMLWithCallback(XMLTask.XMLCallback callback){
-        XMLTask task = new XMLTask(urlString, null, null, callback);
-        task.execute();
-    }
-
-
-    /**
-     * Helper method to parse XML.
-     *
-     * @param myParser XmlPullParser instance to be used for parsing.
-     */
-    private void parseXMLAndStoreIt(XmlPullParser myParser) {
-        int event;
-        String text=null;
-
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXMLWithCallback(XMLTask.XMLCallback callback){
+        XMLTask task = new XMLTask(this, null, null, callback);
         try {
-            event = myParser.getEventType();
-            while (event != XmlPullParser.END_DOCUMENT) {
-                String name=myParser.getName();
-                switch (event){
-                    case XmlPullParser.START_TAG:
-                        break;
-                    case XmlPullParser.TEXT:
-                        text = myParser.getText();
-                        break;
-
-                    case XmlPullParser.END_TAG:
-                        if(name.equals("title")){
-                            titles.add(text);
-                        }
-                        else if(name.equals("link")){
-                            links.add(text);
-                        }
-                        else if(name.equals("description")){
-                            descriptions.add(text);
-                        }
-                        else if(name.equals("image")){
-                            imageURLS.add(text);
-                        }
-                        else{
-                        }
-                        break;
-                }
-                event = myParser.next();
-
-            }
-
-            // Clear results (in case it contains values from a previous query)
-            results.clear();
-
-            for(int i = 0; i < titles.size(); i++){
-                HashMap<String, String> entry = new HashMap<String, String>();
-
-                entry.put("title", titles.get(i));
-
-                if(links.size() > i){
-                    entry.put("link", links.get(i));
-                }
-
-                if(descriptions.size() > i){
-                    entry.put("description", descriptions.get(i));
-                }
-
-                if(imageURLS.size() > i){
-                    entry.put("image", imageURLS.get(i));
-                }
-
-                results.add(entry);
-            }
-
-            parsingComplete = false;
-        } catch (Exception e) {
-            e.printStackTrace();
-            parsingComplete = false;
+            task.executeOnExecutor(getExecutor());
+        } catch (RejectedExecutionException e) {
+            task.rejected(e);
         }
-
+        return task.getFuture();
     }
 
-
     /**
      * Parses the xml file only paying attention to the tags specified.
      * This method is useable without the Android API.
      *
      * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the pending results, which are also available from getResults() once complete.
      */
-    public void fetchXMLForKeys_Support(final String... fields){
-
-        Thread thread = new Thread(new Runnable(){
-            @Override
-            public void run() {
-                try {
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection)
-                            url.openConnection();
-                    conn.setReadTimeout(20000 /* milliseconds */);
-                    conn.setConnectTimeout(30000 /* milliseconds */);
-                    conn.setRequestMethod("GET");
-                    conn.setDoInput(true);
-                    conn.connect();
-                    InputStream stream = conn.getInputStream();
-
-                    // Get XML string and escape it
-                    String XMLString = getStringForXMLData(stream);
-                    String escapedXMLString = removeHTMLEntities(XMLString);
-
-                    if(escapedXMLString.equalsIgnoreCase("No results")){
-                        results.clear();
-                        parsingComplete = false;
-                        stream.close();
-                        return;
-                    }
-
-                    // Convert escaped string back to stream data
-                    stream = new ByteArrayInputStream(escapedXMLString.getBytes("UTF-8"));
-
-                    xmlFactoryObject = XmlPullParserFactory.newInstance();
-                    XmlPullParser myParser = xmlFactoryObject.newPullParser();
-
-                    myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-                    myParser.setInput(stream, null);
-                    parseXMLAndStoreIt(myParser, fields);
-                    stream.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    parsingComplete = false;
-                }
-            }
-        });
-
-        thread.start();
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXMLForKeys_Support(final String... fields){
+        return fetch(fields);
     }
 
     /**
@@ -277,10 +69,16 @@ public class OEXMLParser {
      *
      * @param callback A bit of code that is executed on completion of the xml fetch.
      * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the pending results, completed on the UI thread just before the callback is called.
      */
-    public void fetchXMLForKeysWithCallback(XMLTask.XMLCallback callback, final String... fields){
-        XMLTask task = new XMLTask(urlString, null, null, callback);
-        task.execute(fields);
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXMLForKeysWithCallback(XMLTask.XMLCallback callback, final String... fields){
+        XMLTask task = new XMLTask(this, null, null, callback);
+        try {
+            task.executeOnExecutor(getExecutor(), fields);
+        } catch (RejectedExecutionException e) {
+            task.rejected(e);
+        }
+        return task.getFuture();
     }
 
 
@@ -291,57 +89,10 @@ public class OEXMLParser {
      * @param username username for authentication.
      * @param password password for authentication.
      * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the pending results, which are also available from getResults() once complete.
      */
-    public void fetchXMLForKeysWithAuthentication_Support(final String username, final String password, final String... fields){
-
-        Thread thread = new Thread(new Runnable(){
-            @Override
-            public void run(){
-                try {
-                    URL url = new URL(urlString);
-                    HttpURLConnection conn = (HttpURLConnection)
-                            url.openConnection();
-                    conn.setReadTimeout(20000 /* milliseconds */);
-                    conn.setConnectTimeout(30000 /* milliseconds */);
-                    conn.setRequestMethod("GET");
-                    conn.setDoInput(true);
-                    String basicAuth = username + ":" + password;
-                    basicAuth = "Basic " + new String(Base64.encode(basicAuth.getBytes(), Base64.NO_WRAP));
-                    conn.setRequestProperty("Authorization",basicAuth);
-                    conn.connect();
-                    InputStream stream = conn.getInputStream();
-
-                    // Get XML string and escape it
-                    String XMLString = getStringForXMLData(stream);
-                    String escapedXMLString = removeHTMLEntities(XMLString);
-
-                    Log.d("POKEMON", "x"+escapedXMLString.trim()+"x");
-                    if(escapedXMLString.trim().equalsIgnoreCase("No results") || escapedXMLString.equalsIgnoreCase("")){
-                        results.clear();
-                        parsingComplete = false;
-                        stream.close();
-                        return;
-                    }
-
-                    // Convert escaped string back to stream data
-                    stream = new ByteArrayInputStream(escapedXMLString.getBytes("UTF-8"));
-
-
-                    xmlFactoryObject = XmlPullParserFactory.newInstance();
-                    XmlPullParser myParser = xmlFactoryObject.newPullParser();
-
-                    myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-                    myParser.setInput(stream, null);
-                    parseXMLAndStoreIt(myParser, fields);
-                    stream.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    parsingComplete = false;
-                }
-            }
-        });
-
-        thread.start();
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXMLForKeysWithAuthentication_Support(final String username, final String password, final String... fields){
+        return fetchWithAuthentication(username, password, fields);
     }
 
     /**
@@ -353,111 +104,49 @@ public class OEXMLParser {
      * @param password password for authentication.
      * @param callback A bit of code that is executed on completion of the xml fetch.
      * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the pending results, completed on the UI thread just before the callback is called.
      */
-    public void fetchXMLForKeysWithAuthentication(final String username, final String password, XMLTask.XMLCallback callback, final String... fields){
-        XMLTask task = new XMLTask(urlString, username, password, callback);
-        task.execute(fields);
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchXMLForKeysWithAuthentication(final String username, final String password, XMLTask.XMLCallback callback, final String... fields){
+        XMLTask task = new XMLTask(this, username, password, callback);
+        try {
+            task.executeOnExecutor(getExecutor(), fields);
+        } catch (RejectedExecutionException e) {
+            task.rejected(e);
+        }
+        return task.getFuture();
     }
 
-
     /**
-     * Helper method to parse XML only paying attention to the specified tags.
+     * Asynchronously parses the xml file and hands each item to the listener as soon as its
+     * closing tag has been read, instead of waiting for the whole document to be parsed.
+     * Only the tags specified are stored in each item. Listener methods are called on the UI thread.
+     * This method CANNOT be used without the Android API.
      *
-     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param listener Receives each item as it is parsed, followed by onEnd() or onError().
      * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return a future that completes, on the UI thread, once every item has been delivered.
      */
-    private void parseXMLAndStoreIt(XmlPullParser myParser, String... fields) {
-        int event;
-        String text=null;
-
-        // 2d Array - where row is "required xml field" and column is "array of values for that field"
-        ArrayList<ArrayList<String>> listOfFieldValues = new ArrayList<ArrayList<String>>();
-
-        // Initialize list of field values
-        for(int i = 0; i < fields.length; i++){
-            listOfFieldValues.add(new ArrayList<String>());
-        }
-
-        try {
-            event = myParser.getEventType();
-            while (event != XmlPullParser.END_DOCUMENT) {
-                String name=myParser.getName();
-                switch (event){
-                    case XmlPullParser.START_TAG:
-                        break;
-                    case XmlPullParser.TEXT:
-                        text = myParser.getText();
-                        break;
-
-                    case XmlPullParser.END_TAG:
-
-                        // get data of required fields
-                        for(int i = 0; i < fields.length; i++){
-                            String field = fields[i];
-
-                            if(name.equals(field)){
-                                listOfFieldValues.get(i).add(text);
-                            }
-
-                        }
-
-
-                        break;
-                }
-                event = myParser.next();
-
-            }
-
-            // Clear results (in case it contains values from a previous query)
-            results.clear();
-
-            // populate results variable with a dictionary where each key corresponds to a
-            // specified xml field and maps to an array containing all the values of said field.
-            if(!listOfFieldValues.isEmpty()){
-                for(int i = 0; i < listOfFieldValues.get(0).size(); i++){
-                    HashMap<String, String> entry = new HashMap<String, String>();
-
-                    for(int j = 0; j < fields.length; j++){
-                        entry.put(fields[j], listOfFieldValues.get(j).get(i));
-                    }
-
-                    results.add(entry);
-                }
-
-                parsingComplete = false;
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            parsingComplete = false;
-        }
-
-    }
-
-
-    /************************ HELPER METHODS *******************************/
-    private String getStringForXMLData(InputStream inputStream){
-        String result = "";
-
+    public FetchFuture<Void> fetchXMLForKeysWithListener(XMLItemTask.XMLItemListener listener, final String... fields){
+        XMLItemTask task = new XMLItemTask(this, null, null, listener);
         try {
-            BufferedReader input = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-            StringBuilder strB = new StringBuilder();
-            String str;
-            while (null != (str = input.readLine())) {
-                strB.append(str).append("\r\n");
-            }
-            input.close();
-            result = strB.toString();
-        } catch (IOException e) {
-            e.printStackTrace();
-            parsingComplete = false;
+            task.executeOnExecutor(getExecutor(), fields);
+        } catch (RejectedExecutionException e) {
+            task.rejected(e);
         }
-
-        return result;
+        return task.getFuture();
     }
 
-    private String removeHTMLEntities(String string){
-        return  string.replaceAll("&.{0,}?;", "");
+    /**
+     * Parses the xml file and hands each item to the listener as soon as its closing tag has
+     * been read. Listener methods are called on the background thread doing the parsing.
+     * This method is useable without the Android API.
+     *
+     * @param listener Receives each item as it is parsed, followed by onEnd() or onError().
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return a future that completes once every item has been delivered.
+     */
+    public FetchFuture<Void> fetchXMLForKeysWithListener_Support(final XMLItemTask.XMLItemListener listener, final String... fields){
+        return fetchItems(listener, fields);
     }
 
 
@@ -483,10 +172,13 @@ public class OEXMLParser {
             try {
                 HttpURLConnection urlc = (HttpURLConnection) (new URL("http://www.google.com").openConnection());
                 urlc.setRequestProperty("User-Agent", "Test");
-                urlc.setRequestProperty("Connection", "close");
                 urlc.setConnectTimeout(500);
                 urlc.connect();
-                return (urlc.getResponseCode() == 200);
+                boolean connected = (urlc.getResponseCode() == 200);
+
+                // Close the body rather than the connection, so it can be reused
+                urlc.getInputStream().close();
+                return connected;
             } catch (IOException e) {
                 Log.e(TAG, "Error checking internet connection", e);
             }
@@ -533,66 +225,44 @@ public class OEXMLParser {
         }
 
         private XMLCallback delegate;
-        private XmlPullParserFactory xmlFactoryObject;
-        private String urlString;
+        private FeedParser parser;
         private String username;
         private String password;
+        private FeedCache feedCache;
+        private HttpTransport transport;
+        private FetchFuture<ArrayList<HashMap<String, String>>> future = new FetchFuture<ArrayList<HashMap<String, String>>>();
+        private Exception error;
 
-        XMLTask(String URLString, String username, String password, XMLCallback callback){
+        XMLTask(FeedParser parser, String username, String password, XMLCallback callback){
             this.delegate = callback;
-            this.urlString = URLString;
+            this.parser = parser;
             this.username = username;
             this.password = password;
+            this.feedCache = parser.getFeedCache();
+            this.transport = parser.getTransport();
+            parser.trackMetrics(future);
+        }
+
+        FetchFuture<ArrayList<HashMap<String, String>>> getFuture() {
+            return future;
         }
 
         @Override
         protected ArrayList<HashMap<String, String>> doInBackground(String... params) {
+            /* Cancelled before it got to run */
+            if(future.isDone()){
+                return null;
+            }
+
             try{
-                /* Get XML data */
-                URL url = new URL(urlString);
-                HttpURLConnection conn = (HttpURLConnection)
-                        url.openConnection();
-                conn.setReadTimeout(20000 /* milliseconds */);
-                conn.setConnectTimeout(30000 /* milliseconds */);
-                conn.setRequestMethod("GET");
-                conn.setDoInput(true);
-                if(username != null && password != null){
-                    String basicAuth = username + ":" + password;
-                    basicAuth = "Basic " + new String(Base64.encode(basicAuth.getBytes(), Base64.NO_WRAP));
-                    conn.setRequestProperty("Authorization",basicAuth);
-                }
-                conn.connect();
-                InputStream stream = conn.getInputStream();
-
-                /* Get XML string and escape it */
-                String XMLString = getStringForXMLData(stream);
-                String escapedXMLString = removeHTMLEntities(XMLString);
-
-                if(escapedXMLString.equalsIgnoreCase("No results")){
-                    stream.close();
-                    return null;
-                }
-
-                /* Convert escaped string back to stream data */
-                stream = new ByteArrayInputStream(escapedXMLString.getBytes("UTF-8"));
-
-                xmlFactoryObject = XmlPullParserFactory.newInstance();
-                XmlPullParser myParser = xmlFactoryObject.newPullParser();
-                myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
-                myParser.setInput(stream, null);
-                ArrayList<HashMap<String, String>> result;
-                if(params != null && params.length > 0){
-                    result = parseXMLAndStoreIt(myParser, params);
-                }
-                else{
-                    /* User did not provide fields. Use default ones */
-                    result = parseXMLAndStoreIt(myParser, "title", "link", "description", "image");
-                }
-                stream.close();
-                return result;
+                /* Use the default fields if the user did not provide any */
+                params = FeedParser.fieldsOrDefault(params);
+
+                return parser.load(transport, feedCache, future, username, password, params);
             }
             catch (Exception e){
-                e.printStackTrace();
+                parser.getLogger().error(TAG, "Error parsing " + parser.getUrlString(), e);
+                error = e;
                 return null;
             }
         }
@@ -600,111 +270,127 @@ public class OEXMLParser {
         @Override
         protected void onPostExecute(ArrayList<HashMap<String, String>> result) {
             super.onPostExecute(result);
+            if(future.isCancelled()){
+                return;
+            }
+
+            if(error != null){
+                future.completeExceptionally(error);
+            }
+            else{
+                future.complete(result != null ? result : new ArrayList<HashMap<String, String>>());
+            }
             delegate.onComplete(result);
         }
 
-        public ArrayList<HashMap<String, String>> parseXMLAndStoreIt(XmlPullParser myParser, String... fields) {
-            int event;
-            String text=null;
-
-            // 2d Array - where row is "required xml field" and column is "array of values for that field"
-            ArrayList<ArrayList<String>> listOfFieldValues = new ArrayList<ArrayList<String>>();
+        /**
+         * Fails the task when the executor has no room for it, calling back straight away.
+         */
+        void rejected(RejectedExecutionException e) {
+            parser.rejected(future, e);
+            delegate.onComplete(null);
+        }
+    }
 
-            // Initialize list of field values
-            for(int i = 0; i < fields.length; i++){
-                listOfFieldValues.add(new ArrayList<String>());
-            }
 
-            try {
-                event = myParser.getEventType();
-                while (event != XmlPullParser.END_DOCUMENT) {
-                    String name=myParser.getName();
-                    switch (event){
-                        case XmlPullParser.START_TAG:
-                            break;
-                        case XmlPullParser.TEXT:
-                            text = myParser.getText();
-                            break;
+    /** Asynchronous Task for parsing XML files item by item **/
+    public static class XMLItemTask extends AsyncTask<String, HashMap<String, String>, Exception> {
 
-                        case XmlPullParser.END_TAG:
+        public interface XMLItemListener extends FeedItemListener {
+        }
 
-                            // get data of required fields
-                            for(int i = 0; i < fields.length; i++){
-                                String field = fields[i];
+        private XMLItemListener delegate;
+        private FeedParser parser;
+        private String username;
+        private String password;
+        private HttpTransport transport;
+        private FetchFuture<Void> future = new FetchFuture<Void>();
 
-                                if(name.equals(field)){
-                                    listOfFieldValues.get(i).add(text);
-                                }
+        XMLItemTask(FeedParser parser, String username, String password, XMLItemListener listener){
+            this.delegate = listener;
+            this.parser = parser;
+            this.username = username;
+            this.password = password;
+            this.transport = parser.getTransport();
+            parser.trackMetrics(future);
+        }
 
-                            }
+        FetchFuture<Void> getFuture() {
+            return future;
+        }
 
+        @Override
+        protected Exception doInBackground(String... params) {
+            /* Cancelled before it got to run */
+            if(future.isDone()){
+                return null;
+            }
 
-                            break;
+            try{
+                /* Pass each item over to the UI thread as soon as it is parsed */
+                FeedItemListener publisher = new FeedItemListener() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void onItem(HashMap<String, String> item) {
+                        publishProgress(item);
                     }
-                    event = myParser.next();
-
-                }
 
-                // Initialize return value
-                ArrayList<HashMap<String, String>> results = new ArrayList<HashMap<String, String>>();
-
-                // populate results variable with a dictionary where each key corresponds to a
-                // specified xml field and maps to an array containing all the values of said field.
-                if(!listOfFieldValues.isEmpty()){
-                    for(int i = 0; i < listOfFieldValues.get(0).size(); i++){
-                        HashMap<String, String> entry = new HashMap<String, String>();
-
-                        for(int j = 0; j < fields.length; j++){
-                            if(listOfFieldValues.get(j).size() > i){
-                                entry.put(fields[j], listOfFieldValues.get(j).get(i));
-                            }
-                        }
-
-                        results.add(entry);
+                    @Override
+                    public void onError(Exception e) {
                     }
-                }
 
-                return results;
+                    @Override
+                    public void onEnd() {
+                    }
+                };
 
-            } catch (Exception e) {
-                e.printStackTrace();
+                /* Use the default fields if the user did not provide any */
+                params = FeedParser.fieldsOrDefault(params);
+                parser.streamItems(transport, future, username, password, publisher, params);
                 return null;
             }
-
+            catch (Exception e){
+                parser.getLogger().error(TAG, "Error parsing " + parser.getUrlString(), e);
+                return e;
+            }
         }
 
-        private String getStringForXMLData(InputStream inputStream){
-            String result = "";
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void onProgressUpdate(HashMap<String, String>... items) {
+            super.onProgressUpdate(items);
+            if(future.isCancelled()){
+                return;
+            }
 
-            try {
-                BufferedReader input = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-                StringBuilder strB = new StringBuilder();
-                String str;
-                while (null != (str = input.readLine())) {
-                    strB.append(str).append("\r\n");
-                }
-                input.close();
-                result = strB.toString();
-            } catch (IOException e) {
-                e.printStackTrace();
+            for(HashMap<String, String> item : items){
+                delegate.onItem(item);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Exception error) {
+            super.onPostExecute(error);
+            if(future.isCancelled()){
+                return;
             }
 
-            return result;
+            if(error != null){
+                future.completeExceptionally(error);
+                delegate.onError(error);
+            }
+            else{
+                future.complete(null);
+                delegate.onEnd();
+            }
         }
 
-        private String removeHTMLEntities(String string){
-            return  string.replaceAll("&.{0,}?;", "");
+        /**
+         * Fails the task when the executor has no room for it, calling back straight away.
+         */
+        void rejected(RejectedExecutionException e) {
+            parser.rejected(future, e);
+            delegate.onError(e);
         }
     }
-
-
 }
-
-
-
-
-
-
-
-
-
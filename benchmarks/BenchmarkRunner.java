@@ -0,0 +1,33 @@
+package com.odie.animehub;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark with the GC profiler on, so allocation rates are reported alongside
+ * throughput and latency percentiles. Takes the usual JMH command line options, e.g.
+ * "-p size=1MB" to skip the other sizes or "-p corpus=/path/to/feed.xml" to use a real feed.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        builder.addProfiler(GCProfiler.class);
+
+        // Run everything unless told which benchmarks to run
+        if(commandLine.getIncludes().isEmpty()){
+            builder.include(StageBenchmarks.class.getSimpleName());
+            builder.include(ParseBenchmarks.class.getSimpleName());
+            builder.include(MatchBenchmarks.class.getSimpleName());
+            builder.include(FileParseBenchmarks.class.getSimpleName());
+        }
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,145 @@
+package com.odie.animehub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Feeds for the benchmarks to parse. These are either generated, for a given format and size,
+ * or read from a file so real-world feeds can be benchmarked too.
+ */
+final class FeedCorpus {
+
+    static final String SYNTHETIC = "synthetic";
+
+    /** Child tags of each generated RSS <item> **/
+    private static final String[] RSS_TAGS = {
+            "title", "link", "description", "guid", "pubDate", "author", "category", "comments",
+            "source", "enclosure", "image", "creator", "subject", "rating", "episode", "season",
+            "studio", "genre", "status", "aired", "duration", "score", "rank", "popularity",
+            "members", "favorites", "synopsis", "background", "broadcast", "licensor"
+    };
+
+    /** Child tags of each generated Atom <entry> **/
+    private static final String[] ATOM_TAGS = {
+            "title", "id", "summary", "updated", "published", "content", "rights", "category",
+            "contributor", "name", "email", "uri", "subtitle", "icon", "logo", "generator",
+            "studio", "genre", "status", "aired", "duration", "score", "rank", "popularity",
+            "members", "favorites", "synopsis", "background", "broadcast", "licensor"
+    };
+
+    private FeedCorpus() {
+    }
+
+    /**
+     * @param corpus SYNTHETIC, or the path of a feed to read.
+     * @param format "RSS" or "ATOM", for generated feeds.
+     * @param size "SMALL", "1MB" or "50MB", for generated feeds.
+     * @return the feed as UTF-8.
+     */
+    static byte[] load(String corpus, String format, String size) throws IOException {
+        if(!SYNTHETIC.equals(corpus)){
+            return readFile(new File(corpus));
+        }
+        return generate(format, bytesFor(size)).getBytes("UTF-8");
+    }
+
+    /**
+     * @param format "RSS" or "ATOM".
+     * @param fields "FEW" for the first two tags of every item, or "MANY" for all of them.
+     * @return the tags to ask the parser for.
+     */
+    static String[] fields(String format, String fields) {
+        String[] tags = "ATOM".equals(format) ? ATOM_TAGS : RSS_TAGS;
+        return "FEW".equals(fields) ? Arrays.copyOf(tags, 2) : tags.clone();
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static int bytesFor(String size) {
+        if("SMALL".equals(size)){
+            return 16 * 1024;
+        }
+        if("1MB".equals(size)){
+            return 1024 * 1024;
+        }
+        if("50MB".equals(size)){
+            return 50 * 1024 * 1024;
+        }
+        throw new IllegalArgumentException("Unknown corpus size " + size);
+    }
+
+    /**
+     * Generates a feed of about the given size. Items carry the usual mix found in the wild:
+     * plain text, XML and HTML entities, stray ampersands and HTML inside CDATA sections.
+     */
+    private static String generate(String format, int size) {
+        boolean atom = "ATOM".equals(format);
+        String[] tags = atom ? ATOM_TAGS : RSS_TAGS;
+        String recordTag = atom ? "entry" : "item";
+
+        StringBuilder xml = new StringBuilder(size + 4096);
+        if(atom){
+            xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<feed xmlns=\"http://www.w3.org/2005/Atom\">\n");
+            xml.append("<title>Benchmark Feed</title>\n");
+        }
+        else{
+            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\"><channel>\n");
+            xml.append("<title>Benchmark Feed</title><link>http://example.com/</link>\n");
+        }
+
+        int item = 0;
+        while(xml.length() < size){
+            xml.append('<').append(recordTag).append(">\n");
+            for(int i = 0; i < tags.length; i++){
+                xml.append("  <").append(tags[i]).append('>');
+                switch (i % 4){
+                    case 0:
+                        xml.append("Episode ").append(item).append(" &amp; more&nbsp;&mdash; AT&T");
+                        break;
+                    case 1:
+                        xml.append("http://example.com/").append(recordTag).append('/').append(item);
+                        break;
+                    case 2:
+                        xml.append("<![CDATA[<p>Caf&eacute; <b>").append(item)
+                                .append("</b> &lt;3 &amp; friends</p>]]>");
+                        break;
+                    default:
+                        xml.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit &#169; ").append(i);
+                        break;
+                }
+                xml.append("</").append(tags[i]).append(">\n");
+            }
+            xml.append("</").append(recordTag).append(">\n");
+            item++;
+        }
+
+        xml.append(atom ? "</feed>\n" : "</channel></rss>\n");
+        return xml.toString();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1){
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
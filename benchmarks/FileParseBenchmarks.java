@@ -0,0 +1,121 @@
+package com.odie.animehub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks FeedFileParser on a large local file with different numbers of threads, against
+ * parsing the same file in one go, to show how parsing scales across cores. The generated
+ * feed is repeated until the file reaches the requested size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileParseBenchmarks {
+
+    @Param({"200MB"})
+    public String size;
+
+    @Param({"RSS", "ATOM"})
+    public String format;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    /** "synthetic", or the path of a real feed to use instead **/
+    @Param({FeedCorpus.SYNTHETIC})
+    public String corpus;
+
+    private File file;
+    private String[] fieldNames;
+    private FeedSchema schema;
+    private ForkJoinPool pool;
+    private FeedFileParser fileParser;
+
+    @Setup
+    public void setUp() throws IOException {
+        fieldNames = FeedCorpus.fields(format, "MANY");
+        schema = new FeedSchema(fieldNames);
+        file = FeedCorpus.SYNTHETIC.equals(corpus) ? writeFile() : new File(corpus);
+
+        pool = new ForkJoinPool(threads);
+        fileParser = new FeedFileParser();
+        fileParser.setPool(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        if(FeedCorpus.SYNTHETIC.equals(corpus)){
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public int parseInChunks() throws Exception {
+        return fileParser.parseRecords(file, fieldNames).size();
+    }
+
+    @Benchmark
+    public int parseInOneGo() throws Exception {
+        // Baseline: a single pull parser over the whole file, the same whatever the threads
+        Reader reader = FeedParser.getReaderForXMLData(new FileInputStream(file));
+        XmlPullParser myParser = PullParsers.obtain(null, reader, false);
+        try {
+            return FeedParser.parseXMLFeedRecords(myParser, null, schema).size();
+        } finally {
+            PullParsers.recycle(null, myParser);
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes the items of a generated 50 MB feed over and over, between a single header and
+     * footer, until the file is big enough.
+     */
+    private File writeFile() throws IOException {
+        String feed = new String(FeedCorpus.load(FeedCorpus.SYNTHETIC, format, "50MB"), "UTF-8");
+        String recordTag = "ATOM".equals(format) ? "<entry>" : "<item>";
+        String footer = "ATOM".equals(format) ? "</feed>" : "</channel>";
+        int itemsStart = feed.indexOf(recordTag);
+        int itemsEnd = feed.lastIndexOf(footer);
+        byte[] items = feed.substring(itemsStart, itemsEnd).getBytes("UTF-8");
+
+        long target = Long.parseLong(size.replace("MB", "")) * 1024 * 1024;
+        File generated = File.createTempFile("benchmark", ".xml");
+        OutputStream out = new FileOutputStream(generated);
+        try {
+            out.write(feed.substring(0, itemsStart).getBytes("UTF-8"));
+            for(long written = 0; written < target; written += items.length){
+                out.write(items);
+            }
+            out.write(feed.substring(itemsEnd).getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return generated;
+    }
+}
@@ -0,0 +1,152 @@
+package com.odie.animehub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks picking the requested fields out of a document, with the parser already past
+ * decompression and entity decoding. The loop parseXMLAndStoreIt() used to run, comparing every
+ * END_TAG against every requested field and calling getName() on every event, is kept as a
+ * baseline, and pullEvents is the cost of the parser on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmarks {
+
+    @Param({"SMALL", "1MB", "50MB"})
+    public String size;
+
+    @Param({"RSS", "ATOM"})
+    public String format;
+
+    @Param({"FEW", "MANY"})
+    public String fields;
+
+    /** "synthetic", or the path of a real feed to use instead **/
+    @Param({FeedCorpus.SYNTHETIC})
+    public String corpus;
+
+    private String xml;
+    private String[] fieldNames;
+    private XmlPullParserFactory factory;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Decode entities up front, so only the parsing and matching is timed
+        BufferedReader reader = FeedParser.getReaderForXMLData(new ByteArrayInputStream(FeedCorpus.load(corpus, format, size)));
+        StringBuilder decoded = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while((read = reader.read(buffer)) != -1){
+            decoded.append(buffer, 0, read);
+        }
+        xml = decoded.toString();
+        fieldNames = FeedCorpus.fields(format, fields);
+        factory = XmlPullParserFactory.newInstance();
+    }
+
+    @Benchmark
+    public int pullEvents() throws Exception {
+        XmlPullParser myParser = newParser();
+        int events = 0;
+        while(myParser.next() != XmlPullParser.END_DOCUMENT){
+            events++;
+        }
+        return events;
+    }
+
+    @Benchmark
+    public ArrayList<ArrayList<String>> linearScan() throws Exception {
+        XmlPullParser myParser = newParser();
+        ArrayList<ArrayList<String>> listOfFieldValues = newColumns();
+        String text = null;
+
+        int event = myParser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            String name = myParser.getName();
+            switch (event){
+                case XmlPullParser.TEXT:
+                    text = myParser.getText();
+                    break;
+
+                case XmlPullParser.END_TAG:
+                    for(int i = 0; i < fieldNames.length; i++){
+                        if(name.equals(fieldNames[i])){
+                            listOfFieldValues.get(i).add(text);
+                        }
+                    }
+                    break;
+            }
+            event = myParser.next();
+        }
+        return listOfFieldValues;
+    }
+
+    @Benchmark
+    public ArrayList<ArrayList<String>> fieldCapture() throws Exception {
+        XmlPullParser myParser = newParser();
+        final ArrayList<ArrayList<String>> listOfFieldValues = newColumns();
+        FieldCapture capture = new FieldCapture(myParser, new FieldMatcher(fieldNames), new FieldCapture.FieldSink() {
+            @Override
+            public void onField(int index, String value) {
+                listOfFieldValues.get(index).add(value);
+            }
+        });
+
+        int event = myParser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            switch (event){
+                case XmlPullParser.START_TAG:
+                    capture.startTag(myParser);
+                    break;
+                case XmlPullParser.TEXT:
+                    capture.text(myParser);
+                    break;
+
+                case XmlPullParser.END_TAG:
+                    capture.endTag(myParser);
+                    break;
+            }
+            event = myParser.next();
+        }
+        return listOfFieldValues;
+    }
+
+    private XmlPullParser newParser() throws XmlPullParserException, IOException {
+        XmlPullParser myParser = factory.newPullParser();
+        myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        myParser.setInput(new StringReader(xml));
+        return myParser;
+    }
+
+    private ArrayList<ArrayList<String>> newColumns() {
+        ArrayList<ArrayList<String>> columns = new ArrayList<ArrayList<String>>();
+        for(int i = 0; i < fieldNames.length; i++){
+            columns.add(new ArrayList<String>());
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,114 @@
+package com.odie.animehub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing on its own, into HashMaps or FeedRecords, and the whole fetch, from
+ * response bytes to parsed results, asking for a few or many of the tags in each item.
+ * Responses come from a StubHttpTransport so the network doesn't skew the numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmarks {
+
+    private static final String URL = "http://benchmark/feed";
+    private static final String GZIP_URL = "http://benchmark/feed.gz";
+
+    @Param({"SMALL", "1MB", "50MB"})
+    public String size;
+
+    @Param({"RSS", "ATOM"})
+    public String format;
+
+    @Param({"FEW", "MANY"})
+    public String fields;
+
+    /** "synthetic", or the path of a real feed to use instead **/
+    @Param({FeedCorpus.SYNTHETIC})
+    public String corpus;
+
+    private byte[] xml;
+    private String[] fieldNames;
+    private FeedSchema schema;
+    private XmlPullParserFactory factory;
+    private FeedParser positionalParser;
+    private FeedParser recordParser;
+    private FeedParser gzipParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = FeedCorpus.load(corpus, format, size);
+        fieldNames = FeedCorpus.fields(format, fields);
+        schema = new FeedSchema(fieldNames);
+        factory = XmlPullParserFactory.newInstance();
+
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Encoding", "gzip");
+        StubHttpTransport transport = new StubHttpTransport();
+        transport.addResponse(URL, 200, new HashMap<String, String>(), xml);
+        transport.addResponse(GZIP_URL, 200, headers, FeedCorpus.gzip(xml));
+
+        positionalParser = new FeedParser(URL);
+        positionalParser.setTransport(transport);
+
+        recordParser = new FeedParser(URL);
+        recordParser.setTransport(transport);
+        recordParser.setRecordTag("ATOM".equals(format) ? "entry" : "item");
+
+        gzipParser = new FeedParser(GZIP_URL);
+        gzipParser.setTransport(transport);
+        gzipParser.setRecordTag(recordParser.getRecordTag());
+    }
+
+    @Benchmark
+    public ArrayList<HashMap<String, String>> parseRecords() throws Exception {
+        XmlPullParser parser = factory.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(FeedParser.getReaderForXMLData(new ByteArrayInputStream(xml)));
+        return FeedParser.parseXMLRecords(parser, null, fieldNames);
+    }
+
+    @Benchmark
+    public ArrayList<FeedRecord> parseFeedRecords() throws Exception {
+        XmlPullParser parser = factory.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(FeedParser.getReaderForXMLData(new ByteArrayInputStream(xml)));
+        return FeedParser.parseXMLFeedRecords(parser, null, schema);
+    }
+
+    @Benchmark
+    public ArrayList<HashMap<String, String>> fetchPositional() throws Exception {
+        return positionalParser.fetch(fieldNames).get();
+    }
+
+    @Benchmark
+    public ArrayList<HashMap<String, String>> fetchRecords() throws Exception {
+        return recordParser.fetch(fieldNames).get();
+    }
+
+    @Benchmark
+    public ArrayList<HashMap<String, String>> fetchRecordsGzipped() throws Exception {
+        return gzipParser.fetch(fieldNames).get();
+    }
+}
@@ -0,0 +1,107 @@
+package com.odie.animehub;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage data goes through before it reaches the XML parser, one at a time:
+ * decompressing the response and decoding entities. The regex removeHTMLEntities() used to
+ * run over the whole document is kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmarks {
+
+    private static final String URL = "http://benchmark/feed";
+
+    @Param({"SMALL", "1MB", "50MB"})
+    public String size;
+
+    @Param({"RSS", "ATOM"})
+    public String format;
+
+    /** "synthetic", or the path of a real feed to use instead **/
+    @Param({FeedCorpus.SYNTHETIC})
+    public String corpus;
+
+    private byte[] xml;
+    private String xmlString;
+    private StubHttpTransport transport;
+    private char[] buffer = new char[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        xml = FeedCorpus.load(corpus, format, size);
+        xmlString = new String(xml, "UTF-8");
+
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Encoding", "gzip");
+        transport = new StubHttpTransport();
+        transport.addResponse(URL, 200, headers, FeedCorpus.gzip(xml));
+    }
+
+    @Benchmark
+    public long decompress() throws IOException {
+        HttpTransport.Response response = transport.get(URL, new HashMap<String, String>());
+        InputStream stream = FeedParser.getInputStream(response, new FetchFuture<Void>());
+
+        byte[] bytes = new byte[8192];
+        long total = 0;
+        int read;
+        while((read = stream.read(bytes)) != -1){
+            total += read;
+        }
+        response.close();
+        return total;
+    }
+
+    @Benchmark
+    public long decodeEntities() throws IOException {
+        return drain(new EntityDecodingReader(new InputStreamReader(new ByteArrayInputStream(xml), "UTF-8")));
+    }
+
+    @Benchmark
+    public long readForParser() throws IOException {
+        // Decoding plus the buffering and charset decoding the parser sees
+        BufferedReader reader = FeedParser.getReaderForXMLData(new ByteArrayInputStream(xml));
+        return drain(reader);
+    }
+
+    @Benchmark
+    public String removeHTMLEntitiesRegex() {
+        // What every fetch used to do to the whole document
+        return xmlString.replaceAll("&.{0,}?;", "");
+    }
+
+    private long drain(Reader reader) throws IOException {
+        long total = 0;
+        int read;
+        while((read = reader.read(buffer, 0, buffer.length)) != -1){
+            total += read;
+        }
+        reader.close();
+        return total;
+    }
+}
@@ -0,0 +1,81 @@
+package com.odie.animehub;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that keeps count of the bytes read through it and, if asked to, of the time spent
+ * waiting for them.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final boolean timed;
+    private volatile long count = 0;
+    private volatile long readNanos = 0;
+
+    CountingInputStream(InputStream in) {
+        this(in, false);
+    }
+
+    /**
+     * @param in stream to read from.
+     * @param timed true to keep track of the time spent in read().
+     */
+    CountingInputStream(InputStream in, boolean timed) {
+        super(in);
+        this.timed = timed;
+    }
+
+    /**
+     * @return the number of bytes read so far.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the time spent in read() so far, or 0 if it isn't being timed.
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        int b = in.read();
+        if(timed){
+            readNanos += System.nanoTime() - start;
+        }
+        if(b != -1){
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        int read = in.read(b, off, len);
+        if(timed){
+            readNanos += System.nanoTime() - start;
+        }
+        if(read > 0){
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
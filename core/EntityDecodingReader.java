@@ -0,0 +1,328 @@
+package com.odie.animehub;
+
+import org.apache.commons.lang3.text.translate.EntityArrays;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+
+/**
+ * Reader that sorts out the entities in an XML stream as it is read, so that feeds using HTML
+ * entities the XML parser doesn't know about can still be parsed. In a single pass:
+ *
+ * - HTML entities (e.g. "&amp;nbsp;", "&amp;eacute;") are replaced by the characters they stand for.
+ * - The XML entities ("&amp;amp;", "&amp;lt;", "&amp;gt;", "&amp;quot;", "&amp;apos;") and numeric
+ *   character references are left for the parser to decode.
+ * - Entities nobody knows about are dropped.
+ * - An '&amp;' that doesn't start an entity (e.g. "AT&amp;T") is escaped so it comes out as itself.
+ *
+ * CDATA sections are handed back untouched, since their contents are meant to be taken
+ * literally.
+ */
+class EntityDecodingReader extends FilterReader {
+
+    private static final int MAX_ENTITY_LENGTH = 32;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+    private static final char[] ESCAPED_AMPERSAND = "&amp;".toCharArray();
+
+    /** Entity names mapped to the text they stand for **/
+    private static final HashMap<String, String> HTML_ENTITIES = new HashMap<String, String>();
+    private static final HashMap<String, String> XML_ENTITIES = new HashMap<String, String>();
+
+    static {
+        addEntities(HTML_ENTITIES, EntityArrays.ISO8859_1_UNESCAPE());
+        addEntities(HTML_ENTITIES, EntityArrays.HTML40_EXTENDED_UNESCAPE());
+        addEntities(XML_ENTITIES, EntityArrays.BASIC_UNESCAPE());
+        addEntities(XML_ENTITIES, EntityArrays.APOS_UNESCAPE());
+    }
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /** Characters to hand back before carrying on with the buffer, e.g. a decoded entity **/
+    private char[] pending;
+    private int pendingPosition = 0;
+
+    /** Number of characters at the front of the buffer to hand back as they are **/
+    private int passThrough = 0;
+    private boolean inCData = false;
+
+    EntityDecodingReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] single = new char[1];
+        int count = read(single, 0, 1);
+        return count == -1 ? -1 : single[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if(len == 0){
+            return 0;
+        }
+
+        int count = 0;
+        while(count < len){
+            if(pending != null){
+                cbuf[off + count++] = pending[pendingPosition++];
+                if(pendingPosition == pending.length){
+                    pending = null;
+                }
+                continue;
+            }
+
+            if(position == limit){
+                // Don't block for more data once we have something to hand back
+                if(count > 0 || !fill()){
+                    break;
+                }
+            }
+
+            int run = plainRunLength(len - count);
+            if(run > 0){
+                System.arraycopy(buffer, position, cbuf, off + count, run);
+                count += run;
+                position += run;
+                continue;
+            }
+
+            char c = buffer[position];
+            if(c == '&' && !inCData){
+                if(handleReference()){
+                    continue;
+                }
+            }
+            else if(c == '<' && !inCData && startsWith(CDATA_START)){
+                passThrough = CDATA_START.length() - 1;
+                inCData = true;
+            }
+            else if(c == ']' && inCData && startsWith(CDATA_END)){
+                passThrough = CDATA_END.length() - 1;
+                inCData = false;
+            }
+
+            cbuf[off + count++] = c;
+            position++;
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        char[] skipBuffer = new char[(int) Math.min(n, BUFFER_SIZE)];
+        long skipped = 0;
+        while(skipped < n){
+            int count = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+            if(count == -1){
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return pending != null || position < limit || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Counts the characters from the current position that can be handed back as they are,
+     * without looking at each one more than once.
+     *
+     * @param max most characters wanted.
+     */
+    private int plainRunLength(int max) {
+        int end = Math.min(limit, position + max);
+
+        if(passThrough > 0){
+            int run = Math.min(passThrough, end - position);
+            passThrough -= run;
+            return run;
+        }
+
+        int run = position;
+        while(run < end){
+            char c = buffer[run];
+            if(c == '&' && !inCData){
+                break;
+            }
+            // Only stop for what could be the start or end of a CDATA section
+            if(c == '<' && !inCData && (run + 1 == limit || buffer[run + 1] == '!')){
+                break;
+            }
+            if(c == ']' && inCData && (run + 1 == limit || buffer[run + 1] == ']')){
+                break;
+            }
+            run++;
+        }
+        return run - position;
+    }
+
+    /**
+     * Deals with the '&' at the current position, which is outside any CDATA section.
+     *
+     * @return true if it was consumed, false if it should be handed back as it is.
+     */
+    private boolean handleReference() throws IOException {
+        int length = referenceLength();
+
+        if(length == 0){
+            // Not an entity
+            position++;
+            setPending(ESCAPED_AMPERSAND);
+            return true;
+        }
+
+        if(buffer[position + 1] == '#'){
+            // The parser decodes these itself
+            passThrough = length - 1;
+            return false;
+        }
+
+        String name = new String(buffer, position + 1, length - 2);
+        String xml = XML_ENTITIES.get(name);
+        if(xml != null){
+            // The parser decodes these itself
+            passThrough = length - 1;
+            return false;
+        }
+
+        String decoded = HTML_ENTITIES.get(name);
+        if(decoded != null){
+            setPending(decoded.toCharArray());
+        }
+        position += length;
+        return true;
+    }
+
+    /**
+     * Works out if the '&' at the current position starts an entity or character reference,
+     * i.e. "&name;", "&#123;" or "&#x7B;".
+     *
+     * @return the length of the reference including the '&' and ';', or 0 if it is not one.
+     */
+    private int referenceLength() throws IOException {
+        if(!ensureAvailable(2)){
+            return 0;
+        }
+
+        boolean numeric = buffer[position + 1] == '#';
+        boolean hex = false;
+        int start = 1;
+        if(numeric){
+            if(!ensureAvailable(3)){
+                return 0;
+            }
+            hex = buffer[position + 2] == 'x' || buffer[position + 2] == 'X';
+            start = hex ? 3 : 2;
+        }
+
+        for(int i = start; i < MAX_ENTITY_LENGTH; i++){
+            if(!ensureAvailable(i + 1)){
+                return 0;
+            }
+
+            char c = buffer[position + i];
+            if(c == ';'){
+                return i > start ? i + 1 : 0;
+            }
+
+            boolean valid;
+            if(hex){
+                valid = Character.digit(c, 16) != -1;
+            }
+            else if(numeric){
+                valid = c >= '0' && c <= '9';
+            }
+            else{
+                valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            }
+            if(!valid){
+                return 0;
+            }
+        }
+
+        return 0;
+    }
+
+    private boolean startsWith(String prefix) throws IOException {
+        for(int i = 1; i < prefix.length(); i++){
+            if(!ensureAvailable(i + 1) || buffer[position + i] != prefix.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setPending(char[] chars) {
+        if(chars.length > 0){
+            pending = chars;
+            pendingPosition = 0;
+        }
+    }
+
+    /**
+     * @return false if the stream ends before count characters from the current position.
+     */
+    private boolean ensureAvailable(int count) throws IOException {
+        while(position + count > limit){
+            if(!fill()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves unread characters to the front of the buffer and reads more from the wrapped reader.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    private boolean fill() throws IOException {
+        if(position > 0){
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        int count = in.read(buffer, limit, buffer.length - limit);
+        if(count == -1){
+            return false;
+        }
+
+        limit += count;
+        return true;
+    }
+
+    private static void addEntities(HashMap<String, String> entities, String[][] table) {
+        for(String[] entry : table){
+            // Entries look like {"&eacute;", "\u00E9"}
+            entities.put(entry[0].substring(1, entry[0].length() - 1), entry[1]);
+        }
+    }
+}
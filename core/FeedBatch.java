@@ -0,0 +1,443 @@
+package com.odie.animehub;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Fetches many feeds in one go. The feeds are downloaded and parsed in parallel, but no more
+ * than getMaxConcurrentFeeds() of them at a time, and the results come back together, one
+ * FeedResult per feed in the order they were asked for. merge() turns them into a single list
+ * of items, newest first, without duplicates.
+ *
+ * Every feed is fetched with the executor, cache, transport and logger set on the batch, so a
+ * batch can share a FeedCache across refresh cycles. Each batch starts its fetches from a thread
+ * of its own rather than from the executor's threads, so an executor that makes submitters wait
+ * can't end up waiting on itself, or hold up other batches. A fetch the executor has no room for
+ * is tried again a little later, backing off while there is still no room.
+ */
+public class FeedBatch {
+
+    public static final int DEFAULT_MAX_CONCURRENT_FEEDS = FetchExecutors.DEFAULT_MAX_THREADS;
+
+    /** Tags holding the date of an item, in order of preference **/
+    static final String[] DATE_FIELDS = {"pubDate", "published", "updated", "dc:date", "date"};
+
+    /** Tags identifying an item, in order of preference **/
+    static final String[] IDENTITY_FIELDS = {"guid", "id", "link"};
+
+    /** How long to wait before trying a fetch the executor had no room for again, at first and at most **/
+    private static final long MIN_RETRY_DELAY_MILLIS = 10;
+    private static final long MAX_RETRY_DELAY_MILLIS = 1000;
+
+    private int maxConcurrentFeeds = DEFAULT_MAX_CONCURRENT_FEEDS;
+    private String recordTag;
+    private int itemLimit;
+    private boolean namespaceAware;
+    private Executor executor;
+    private FeedCache feedCache;
+    private HttpTransport transport;
+    private FeedLogger logger;
+    private FetchMetricsListener metricsListener;
+
+    /** GETTERS AND SETTERS **/
+    public int getMaxConcurrentFeeds() {
+        return maxConcurrentFeeds;
+    }
+
+    /**
+     * @param maxConcurrentFeeds most feeds to fetch at the same time.
+     */
+    public void setMaxConcurrentFeeds(int maxConcurrentFeeds) {
+        if(maxConcurrentFeeds < 1){
+            throw new IllegalArgumentException("maxConcurrentFeeds must be at least 1");
+        }
+        this.maxConcurrentFeeds = maxConcurrentFeeds;
+    }
+
+    public String getRecordTag() {
+        return recordTag;
+    }
+
+    /**
+     * @param recordTag tag enclosing each record in every feed, see FeedParser.setRecordTag().
+     */
+    public void setRecordTag(String recordTag) {
+        this.recordTag = recordTag;
+    }
+
+    public int getItemLimit() {
+        return itemLimit;
+    }
+
+    /**
+     * @param itemLimit most items to read from each feed, see FeedParser.setItemLimit().
+     */
+    public void setItemLimit(int itemLimit) {
+        if(itemLimit < 0){
+            throw new IllegalArgumentException("itemLimit can't be negative");
+        }
+        this.itemLimit = itemLimit;
+    }
+
+    public boolean isNamespaceAware() {
+        return namespaceAware;
+    }
+
+    /**
+     * @param namespaceAware whether to process namespaces, see FeedParser.setNamespaceAware().
+     */
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor executor to run fetches on, or null for the shared default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    public void setFeedCache(FeedCache feedCache) {
+        this.feedCache = feedCache;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public FeedLogger getLogger() {
+        return logger;
+    }
+
+    public void setLogger(FeedLogger logger) {
+        this.logger = logger;
+    }
+
+    public FetchMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * @param metricsListener listener the metrics of each feed's fetch are reported to, or null
+     *                        for the default one, see FeedParser.setMetricsListener().
+     */
+    public void setMetricsListener(FetchMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Fetches and parses every feed. A feed that can't be fetched doesn't stop the others; its
+     * FeedResult carries the error instead. Cancelling the returned future, or letting it time
+     * out, cancels the fetches still running.
+     *
+     * @param requests the feeds to fetch.
+     * @return the pending results, one per request in the same order.
+     */
+    public FetchFuture<ArrayList<FeedResult>> fetch(List<FeedRequest> requests) {
+        BatchFetch batch = new BatchFetch(new ArrayList<FeedRequest>(requests));
+        batch.start();
+        return batch.future;
+    }
+
+    /**
+     * Merges the items of several feeds into one list, newest first. Items are dated by the
+     * first of "pubDate", "published", "updated", "dc:date" or "date" they have, and items
+     * without a date go last. Of the items with the same "guid", "id" or "link", only the
+     * newest is kept. Only tags that were asked for can be used, so ask for them.
+     *
+     * @param results results of a batch fetch.
+     * @return the merged items.
+     */
+    public static ArrayList<HashMap<String, String>> merge(List<FeedResult> results) {
+        ArrayList<DatedItem> items = new ArrayList<DatedItem>();
+        for(FeedResult result : results){
+            for(HashMap<String, String> item : result.getResults()){
+                items.add(new DatedItem(item, parseDate(firstValue(item, DATE_FIELDS))));
+            }
+        }
+
+        // Stable, so undated items stay in feed order
+        Collections.sort(items, new Comparator<DatedItem>() {
+            @Override
+            public int compare(DatedItem a, DatedItem b) {
+                return Long.compare(b.time, a.time);
+            }
+        });
+
+        // Sorted first, so the copy kept is the newest
+        ArrayList<HashMap<String, String>> merged = new ArrayList<HashMap<String, String>>(items.size());
+        HashSet<String> seen = new HashSet<String>();
+        for(DatedItem item : items){
+            String identity = firstValue(item.item, IDENTITY_FIELDS);
+            if(identity == null || seen.add(identity)){
+                merged.add(item.item);
+            }
+        }
+        return merged;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    private FeedParser newParser(FeedRequest request) {
+        FeedParser parser = new FeedParser(request.getUrlString());
+        parser.setRecordTag(recordTag);
+        parser.setItemLimit(itemLimit);
+        parser.setNamespaceAware(namespaceAware);
+        parser.setStopCondition(request.getStopCondition());
+        parser.setExecutor(executor);
+        parser.setFeedCache(feedCache);
+        parser.setTransport(transport);
+        parser.setLogger(logger);
+        parser.setMetricsListener(metricsListener);
+        return parser;
+    }
+
+    static String firstValue(Map<String, String> item, String[] fields) {
+        for(String field : fields){
+            String value = item.get(field);
+            if(value != null && !value.trim().isEmpty()){
+                return value.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses an RSS (RFC 822) or Atom (RFC 3339) date.
+     *
+     * @return milliseconds since the epoch, or Long.MIN_VALUE if there is no date or it can't be parsed.
+     */
+    static long parseDate(String date) {
+        if(date == null){
+            return Long.MIN_VALUE;
+        }
+
+        try {
+            return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // Not an RSS date
+        }
+        try {
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // Not an Atom date
+        }
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+
+    /** An item and its date, for sorting **/
+    private static class DatedItem {
+
+        final HashMap<String, String> item;
+        final long time;
+
+        DatedItem(HashMap<String, String> item, long time) {
+            this.item = item;
+            this.time = time;
+        }
+    }
+
+
+    /**
+     * State of one call to fetch(). Apart from cancelling, it is only ever touched on the
+     * batch's dispatcher thread.
+     */
+    private class BatchFetch {
+
+        final FetchFuture<ArrayList<FeedResult>> future = new FetchFuture<ArrayList<FeedResult>>();
+        final ArrayList<FeedRequest> requests;
+        final FeedResult[] outcomes;
+        final int concurrent;
+        int next = 0;
+        int remaining;
+
+        /** Starts the fetches of this batch and keeps track of them as they finish **/
+        final ScheduledThreadPoolExecutor dispatcher;
+
+        /** Requests the executor had no room for, ready to be tried again **/
+        final ArrayDeque<Integer> rejected = new ArrayDeque<Integer>();
+        final int[] rejections;
+        int waitingToRetry = 0;
+        final ConcurrentHashMap<FetchFuture<?>, Boolean> running = new ConcurrentHashMap<FetchFuture<?>, Boolean>();
+
+        BatchFetch(ArrayList<FeedRequest> requests) {
+            this.requests = requests;
+            this.outcomes = new FeedResult[requests.size()];
+            this.rejections = new int[requests.size()];
+            this.remaining = requests.size();
+            this.concurrent = Math.min(maxConcurrentFeeds, requests.size());
+
+            dispatcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "OEXMLParser-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            dispatcher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+
+        void start() {
+            if(requests.isEmpty()){
+                dispatcher.shutdown();
+                future.complete(new ArrayList<FeedResult>());
+                return;
+            }
+
+            // Stop whatever is still running if the batch is cancelled or times out
+            future.whenComplete(new BiConsumer<ArrayList<FeedResult>, Throwable>() {
+                @Override
+                public void accept(ArrayList<FeedResult> results, Throwable error) {
+                    dispatcher.shutdown();
+                    if(error != null){
+                        for(FetchFuture<?> fetch : running.keySet()){
+                            fetch.cancel(true);
+                        }
+                    }
+                }
+            });
+
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    fill();
+                }
+            });
+        }
+
+        /**
+         * Runs a task on the dispatcher thread, unless the batch is already over.
+         */
+        void dispatch(Runnable task) {
+            try {
+                dispatcher.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Shut down once the batch completed, so there is nothing left to do
+            }
+        }
+
+        /**
+         * Starts fetches until as many are under way, or waiting to be tried again, as the batch allows.
+         */
+        void fill() {
+            while(!future.isDone() && running.size() + waitingToRetry < concurrent
+                    && (!rejected.isEmpty() || next < requests.size())){
+                startNext();
+            }
+        }
+
+        /**
+         * Starts fetching the next feed, trying again those the executor had no room for first.
+         */
+        void startNext() {
+            final int index = !rejected.isEmpty() ? rejected.poll() : next++;
+            final FeedRequest request = requests.get(index);
+            FeedParser parser = newParser(request);
+            final FetchFuture<ArrayList<HashMap<String, String>>> fetch;
+            if(request.getUsername() != null && request.getPassword() != null){
+                fetch = parser.fetchWithAuthentication(request.getUsername(), request.getPassword(), request.getFields());
+            }
+            else{
+                fetch = parser.fetch(request.getFields());
+            }
+            running.put(fetch, Boolean.TRUE);
+
+            // Cancelled while this one was being started
+            if(future.isDone()){
+                fetch.cancel(true);
+            }
+
+            fetch.whenComplete(new BiConsumer<ArrayList<HashMap<String, String>>, Throwable>() {
+                @Override
+                public void accept(final ArrayList<HashMap<String, String>> results, final Throwable error) {
+                    // Usually called on one of the executor's threads, which mustn't start the next fetch
+                    dispatch(new Runnable() {
+                        @Override
+                        public void run() {
+                            finished(index, fetch, results, error);
+                        }
+                    });
+                }
+            });
+        }
+
+        void finished(final int index, FetchFuture<?> fetch, ArrayList<HashMap<String, String>> results, Throwable error) {
+            running.remove(fetch);
+
+            // No room on the executor, so try again once some has had time to free up
+            if(error instanceof RejectedExecutionException && !isShutDown(executor)){
+                long delay = Math.min(MAX_RETRY_DELAY_MILLIS, MIN_RETRY_DELAY_MILLIS << Math.min(rejections[index]++, 16));
+                waitingToRetry++;
+                try {
+                    dispatcher.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            waitingToRetry--;
+                            rejected.add(index);
+                            fill();
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Shut down once the batch completed
+                }
+                return;
+            }
+
+            outcomes[index] = new FeedResult(requests.get(index), results, error);
+            remaining--;
+            if(remaining == 0){
+                future.complete(new ArrayList<FeedResult>(Arrays.asList(outcomes)));
+            }
+            else{
+                fill();
+            }
+        }
+    }
+
+    /**
+     * @return true if the executor will never take another task.
+     */
+    private static boolean isShutDown(Executor executor) {
+        return executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown();
+    }
+}
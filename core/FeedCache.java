@@ -0,0 +1,612 @@
+package com.odie.animehub;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cache of parsed feeds. Each entry holds the results of a fetch along with the ETag and
+ * Last-Modified headers the server sent with it, and is used in two ways:
+ *
+ * - While an entry is younger than the time to live, its results are used without going to the
+ *   network at all.
+ * - After that, the next fetch sends the headers back as If-None-Match and If-Modified-Since, and
+ *   if the server replies 304 Not Modified the cached results are used instead of downloading and
+ *   parsing the feed again.
+ *
+ * Identical fetches (same URL, credentials, record tag and requested tags) that happen at the same
+ * time share a single download. Entries are kept in memory, least recently used first out, within
+ * a maximum number of entries and an estimated maximum size. If a directory is given, entries are
+ * also written to disk so they survive the in-memory cache (and the app) being thrown away.
+ * Entries fetched with a password are only ever kept in memory.
+ */
+public class FeedCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final String TAG = FeedCache.class.getSimpleName();
+
+    /** Rough number of bytes taken up by a HashMap entry, on top of its key and value **/
+    private static final int MAP_ENTRY_OVERHEAD = 64;
+
+    /** Starts every file an entry is written to, and changes whenever the format does **/
+    private static final int FILE_FORMAT = 0x4F455801;
+
+    /** Starts the keys of fetches made with a password, which are kept off disk **/
+    private static final String PRIVATE_KEY_PREFIX = "private\n";
+
+    /** Secret the passwords in keys are hashed with, new each time the app runs **/
+    private static final byte[] KEY_SECRET = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(KEY_SECRET);
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final HashMap<String, CompletableFuture<Entry>> fetchesInFlight = new HashMap<String, CompletableFuture<Entry>>();
+    private final int maxEntries;
+    private final File directory;
+    private long maxBytes = Long.MAX_VALUE;
+    private long timeToLiveMillis = 0;
+    private long totalBytes = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Fetches a feed for the cache.
+     */
+    interface Loader {
+        /**
+         * @param key key the feed is cached under.
+         * @param cached the cached copy to revalidate, or null if there isn't one.
+         * @return cached.revalidated() if the server says it is still current, or a new entry.
+         */
+        Entry load(String key, Entry cached) throws Exception;
+    }
+
+    /**
+     * Creates an in-memory cache holding up to DEFAULT_MAX_ENTRIES feeds.
+     */
+    public FeedCache() {
+        this(DEFAULT_MAX_ENTRIES, null);
+    }
+
+    /**
+     * @param maxEntries maximum number of feeds kept in memory.
+     * @param directory directory to also keep entries in, or null for memory only.
+     */
+    public FeedCache(int maxEntries, File directory) {
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+
+        if(directory != null){
+            directory.mkdirs();
+        }
+    }
+
+    /** GETTERS AND SETTERS **/
+    public synchronized long getTimeToLive(TimeUnit unit) {
+        return unit.convert(timeToLiveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how long cached results are used without asking the server if the feed has changed.
+     * Defaults to 0, meaning every fetch is at least revalidated.
+     */
+    public synchronized void setTimeToLive(long timeToLive, TimeUnit unit) {
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets a limit on the estimated memory taken up by the cached results. Least recently used
+     * entries are dropped from memory to stay within it. Unlimited by default.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /** @return number of fetches answered from the cache without going to the network. **/
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** @return number of fetches answered from the cache after the server replied 304. **/
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /** @return number of fetches that shared the download of an identical fetch in progress. **/
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /** @return number of fetches that had to download the feed. **/
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Builds the key a fetch is cached under. Results depend on more than the URL, so the
+     * credentials, the record tag, the item limit, the namespace mode and the requested tags are
+     * part of the key too. The password only goes in as an HMAC under a secret that is made
+     * afresh each time the app runs, so it can't be worked back out from a memory dump, and
+     * such keys are never written to disk.
+     */
+    static String key(String urlString, String username, String password, String recordTag, int itemLimit,
+                      boolean namespaceAware, String... fields) {
+        StringBuilder key = new StringBuilder();
+        if(password != null){
+            key.append(PRIVATE_KEY_PREFIX);
+        }
+        key.append(urlString);
+        key.append('\n').append(username);
+        if(password != null){
+            key.append(':').append(hmac(username + ":" + password));
+        }
+        key.append('\n').append(recordTag);
+        if(itemLimit > 0){
+            key.append('/').append(itemLimit);
+        }
+        if(namespaceAware){
+            key.append("/ns");
+        }
+        key.append('\n');
+        for(String field : fields){
+            key.append(field).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the results for the key, going to the loader only if there are no fresh results in
+     * the cache, without a fetch of its own to stop waiting on.
+     */
+    ArrayList<HashMap<String, String>> fetch(String key, Loader loader) throws Exception {
+        return fetch(key, null, loader);
+    }
+
+    /**
+     * Returns the results for the key, going to the loader only if there are no fresh results in
+     * the cache. If an identical fetch is already under way, waits for it and shares its results
+     * instead of starting another, unless it is cancelled or times out, in which case this fetch
+     * goes ahead on its own. Must not be called on the UI thread.
+     *
+     * @param caller future of the fetch asking, which stops the wait for an identical fetch when
+     *               it is cancelled or times out, or null.
+     * @return a copy of the results, which the caller is free to change.
+     */
+    ArrayList<HashMap<String, String>> fetch(String key, CompletableFuture<?> caller, Loader loader) throws Exception {
+        Entry cached;
+        CompletableFuture<Entry> fetchInFlight;
+        boolean isLeader = false;
+
+        synchronized (this) {
+            cached = entries.get(key);
+            if(cached != null && isFresh(cached)){
+                hitCount.incrementAndGet();
+                return copyOf(cached.results);
+            }
+
+            fetchInFlight = fetchesInFlight.get(key);
+            if(fetchInFlight == null){
+                fetchInFlight = new CompletableFuture<Entry>();
+                fetchesInFlight.put(key, fetchInFlight);
+                isLeader = true;
+            }
+        }
+
+        if(!isLeader){
+            sharedCount.incrementAndGet();
+            try {
+                return copyOf(waitFor(fetchInFlight, caller).results);
+            } catch (CancellationException e) {
+                if(caller != null && caller.isDone()){
+                    throw e;
+                }
+                // Given up on by whoever started it, which says nothing about the feed
+                return fetch(key, caller, loader);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof TimeoutException){
+                    return fetch(key, caller, loader);
+                }
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        try {
+            if(cached == null){
+                cached = readFromDisk(key);
+                if(cached != null){
+                    synchronized (this) {
+                        add(cached);
+                    }
+                    if(isFresh(cached)){
+                        hitCount.incrementAndGet();
+                        finishFetch(key).complete(cached);
+                        return copyOf(cached.results);
+                    }
+                }
+            }
+
+            Entry entry = loader.load(key, cached);
+            if(entry.revalidated){
+                revalidatedCount.incrementAndGet();
+            }
+            else{
+                missCount.incrementAndGet();
+            }
+            put(entry);
+
+            finishFetch(key).complete(entry);
+            return copyOf(entry.results);
+        } catch (Exception e) {
+            finishFetch(key).completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the entry for a key, both from memory and from disk.
+     */
+    void remove(String key) {
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if(previous != null){
+                totalBytes -= previous.size;
+            }
+        }
+        if(directory != null && !isPrivate(key)){
+            fileFor(key).delete();
+        }
+    }
+
+    /**
+     * Removes every entry, both from memory and from disk.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            totalBytes = 0;
+        }
+        if(directory != null){
+            File[] files = directory.listFiles();
+            if(files != null){
+                for(File file : files){
+                    if(file.getName().endsWith(".feed")){
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * Caches an entry. Nothing is stored if the server sent neither an ETag nor a Last-Modified
+     * header and there is no time to live, as it could never be used.
+     */
+    private void put(Entry entry) {
+        if(entry.eTag == null && entry.lastModified == null && getTimeToLive(TimeUnit.MILLISECONDS) <= 0){
+            return;
+        }
+
+        synchronized (this) {
+            add(entry);
+        }
+        writeToDisk(entry);
+    }
+
+    /**
+     * Keeps an entry in memory, in place of any other under the same key.
+     */
+    private void add(Entry entry) {
+        Entry previous = entries.put(entry.key, entry);
+        if(previous != null){
+            totalBytes -= previous.size;
+        }
+        totalBytes += entry.size;
+        trim();
+    }
+
+    /**
+     * Waits for an identical fetch to finish, or for the caller to be cancelled or time out.
+     */
+    private static Entry waitFor(CompletableFuture<Entry> fetchInFlight, CompletableFuture<?> caller)
+            throws InterruptedException, ExecutionException {
+        if(caller != null){
+            try {
+                CompletableFuture.anyOf(fetchInFlight, caller).get();
+            } catch (ExecutionException e) {
+                // Whichever it was is looked at below
+            } catch (CancellationException e) {
+                // Likewise
+            }
+            if(!fetchInFlight.isDone()){
+                throw new CancellationException("Stopped waiting for an identical fetch");
+            }
+        }
+        return fetchInFlight.get();
+    }
+
+    private synchronized CompletableFuture<Entry> finishFetch(String key) {
+        return fetchesInFlight.remove(key);
+    }
+
+    private boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt < getTimeToLive(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a copy of the results, down to each item, so changing it leaves the cache alone.
+     */
+    private static ArrayList<HashMap<String, String>> copyOf(ArrayList<HashMap<String, String>> results) {
+        ArrayList<HashMap<String, String>> copy = new ArrayList<HashMap<String, String>>(results.size());
+        for(HashMap<String, String> result : results){
+            copy.add(new HashMap<String, String>(result));
+        }
+        return copy;
+    }
+
+    /**
+     * Drops least recently used entries from memory until the cache is within its limits.
+     */
+    private void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(iterator.hasNext() && (entries.size() > maxEntries || totalBytes > maxBytes)){
+            totalBytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        if(directory == null || isPrivate(key)){
+            return null;
+        }
+
+        File file = fileFor(key);
+        if(!file.exists()){
+            return null;
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                Entry entry = Entry.readFrom(input, file.length());
+
+                // Guard against two keys sharing a file name
+                return key.equals(entry.key) ? entry : null;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            FeedParser.getDefaultLogger().error(TAG, "Error reading cached feed " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(Entry entry) {
+        if(directory == null || isPrivate(entry.key)){
+            return;
+        }
+
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileFor(entry.key))));
+            try {
+                entry.writeTo(output);
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            FeedParser.getDefaultLogger().error(TAG, "Error writing cached feed " + entry.key, e);
+        }
+    }
+
+    private static boolean isPrivate(String key) {
+        return key.startsWith(PRIVATE_KEY_PREFIX);
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, digest(key) + ".feed");
+    }
+
+    private static String digest(String string) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-1").digest(string.getBytes("UTF-8")));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hmac(String string) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(KEY_SECRET, "HmacSHA256"));
+            return hex(mac.doFinal(string.getBytes("UTF-8")));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : bytes){
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+
+    /** A cached fetch **/
+    static class Entry {
+
+        final String key;
+        final String eTag;
+        final String lastModified;
+        final ArrayList<HashMap<String, String>> results;
+        final long size;
+
+        // Whether the server said an earlier entry was still current rather than sending the feed
+        final boolean revalidated;
+
+        // When the results were downloaded or last revalidated
+        volatile long storedAt;
+
+        Entry(String key, String eTag, String lastModified, ArrayList<HashMap<String, String>> results) {
+            this(key, eTag, lastModified, results, estimateSize(results), false);
+        }
+
+        private Entry(String key, String eTag, String lastModified, ArrayList<HashMap<String, String>> results,
+                      long size, boolean revalidated) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.results = results;
+            this.size = size;
+            this.revalidated = revalidated;
+            this.storedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * @param eTag ETag sent with the 304 Not Modified, or null if there was none.
+         * @param lastModified Last-Modified sent with the 304 Not Modified, or null if there was none.
+         * @return this entry stored afresh, with the headers the server sent in place of the old ones.
+         */
+        Entry revalidated(String eTag, String lastModified) {
+            return new Entry(key, eTag != null ? eTag : this.eTag, lastModified != null ? lastModified : this.lastModified,
+                    results, size, true);
+        }
+
+        /**
+         * Writes the entry as plain strings and numbers, so reading it back can only ever
+         * make an Entry.
+         */
+        void writeTo(DataOutput output) throws IOException {
+            output.writeInt(FILE_FORMAT);
+            writeString(output, key);
+            writeString(output, eTag);
+            writeString(output, lastModified);
+            output.writeLong(storedAt);
+            output.writeInt(results.size());
+            for(HashMap<String, String> result : results){
+                output.writeInt(result.size());
+                for(Map.Entry<String, String> field : result.entrySet()){
+                    writeString(output, field.getKey());
+                    writeString(output, field.getValue());
+                }
+            }
+        }
+
+        /**
+         * @param maxLength length of the file, which no string or count in it can be longer than.
+         */
+        static Entry readFrom(DataInput input, long maxLength) throws IOException {
+            if(input.readInt() != FILE_FORMAT){
+                throw new IOException("Not a cached feed");
+            }
+            String key = readString(input, maxLength);
+            String eTag = readString(input, maxLength);
+            String lastModified = readString(input, maxLength);
+            long storedAt = input.readLong();
+
+            int count = readCount(input, maxLength);
+            ArrayList<HashMap<String, String>> results = new ArrayList<HashMap<String, String>>(count);
+            for(int i = 0; i < count; i++){
+                int fields = readCount(input, maxLength);
+                HashMap<String, String> result = new HashMap<String, String>();
+                for(int j = 0; j < fields; j++){
+                    String field = readString(input, maxLength);
+                    result.put(field, readString(input, maxLength));
+                }
+                results.add(result);
+            }
+
+            Entry entry = new Entry(key, eTag, lastModified, results);
+            entry.storedAt = storedAt;
+            return entry;
+        }
+
+        private static void writeString(DataOutput output, String string) throws IOException {
+            if(string == null){
+                output.writeInt(-1);
+                return;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        private static String readString(DataInput input, long maxLength) throws IOException {
+            int length = input.readInt();
+            if(length == -1){
+                return null;
+            }
+            byte[] bytes = new byte[readLength(length, maxLength)];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int readCount(DataInput input, long maxLength) throws IOException {
+            return readLength(input.readInt(), maxLength);
+        }
+
+        private static int readLength(int length, long maxLength) throws IOException {
+            if(length < 0 || length > maxLength){
+                throw new IOException("Cached feed is corrupt");
+            }
+            return length;
+        }
+
+        private static long estimateSize(ArrayList<HashMap<String, String>> results) {
+            long size = 0;
+            for(HashMap<String, String> result : results){
+                for(Map.Entry<String, String> field : result.entrySet()){
+                    size += MAP_ENTRY_OVERHEAD + 2 * field.getKey().length();
+                    if(field.getValue() != null){
+                        size += 2 * field.getValue().length();
+                    }
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.odie.animehub;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses large local XML files, e.g. multi-GB archive dumps, on every core. The file is mapped
+ * into memory and cut into chunks of whole records (<item> and <entry>, or the record tag),
+ * which are parsed in parallel on a ForkJoinPool while the rest of the file is still being cut
+ * up. The records come back in document order, as if the file had been parsed in one go.
+ *
+ * The encoding of the file is worked out from its byte order mark or XML declaration, as
+ * FeedParser.parse(Path) does. If the file can't be cut up safely (e.g. it is UTF-16), or a
+ * chunk can't be parsed on its own, the whole file is parsed in one go instead, so the results
+ * are the same either way. So is a file asked for fields that need the tags around each record,
+ * which a chunk doesn't have: paths starting with "/", and paths that don't start at the
+ * record tag (e.g. "channel/item/title").
+ */
+public class FeedFileParser {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final String TAG = FeedFileParser.class.getSimpleName();
+
+    /** Root each chunk is wrapped in, since a chunk holds many records side by side **/
+    private static final byte[] CHUNK_START = "<oexmlparser-chunk>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_END = "</oexmlparser-chunk>".getBytes(StandardCharsets.US_ASCII);
+
+    private String recordTag;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private ForkJoinPool pool;
+    private FeedLogger logger;
+
+    /** GETTERS AND SETTERS **/
+    public String getRecordTag() {
+        return recordTag;
+    }
+
+    /**
+     * @param recordTag tag enclosing each record, or null (the default) for <item> and <entry>.
+     */
+    public void setRecordTag(String recordTag) {
+        this.recordTag = recordTag;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize about how many bytes of the file each task parses. Smaller chunks spread
+     *                  the work more evenly, larger ones cost less to hand out.
+     */
+    public void setChunkSize(int chunkSize) {
+        if(chunkSize < 1){
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the pool chunks are parsed on, or the common ForkJoinPool if none has been set.
+     */
+    public ForkJoinPool getPool() {
+        return pool != null ? pool : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @param pool pool to parse chunks on, e.g. new ForkJoinPool(4) to use four threads, or null
+     *             for the common pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return the logger messages are sent to, or the default FeedParser one if none has been set.
+     */
+    public FeedLogger getLogger() {
+        return logger != null ? logger : FeedParser.getDefaultLogger();
+    }
+
+    public void setLogger(FeedLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Parses the file record by record.
+     *
+     * @param file the XML file.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the records, in document order, all sharing the same FeedSchema.
+     */
+    public ArrayList<FeedRecord> parseRecords(File file, String... fields) throws IOException, XmlPullParserException {
+        FeedSchema schema = new FeedSchema(FeedParser.fieldsOrDefault(fields));
+        String tag = recordTag;
+        MappedFile mapped = new MappedFile(file);
+        XmlEncoding encoding = detectEncoding(mapped);
+
+        // The splitter looks for ASCII tags in the raw bytes
+        ArrayList<ForkJoinTask<ArrayList<FeedRecord>>> chunks = null;
+        if(encoding.isAsciiCompatible() && isWithinRecords(schema, tag)){
+            chunks = submitChunks(mapped, encoding.getCharset(), tag, schema);
+        }
+        if(chunks != null){
+            ArrayList<FeedRecord> records = joinChunks(chunks);
+            if(records != null){
+                return records;
+            }
+        }
+
+        getLogger().debug(TAG, "Couldn't split " + file + " into records, parsing it in one go");
+        InputStream whole = mapped.openStream(encoding.getByteOrderMarkLength(), mapped.size());
+        return parse(whole, encoding.getCharset(), tag, schema);
+    }
+
+    /**
+     * Parses the file into HashMaps, like FeedParser.fetch() does with a record tag. For very
+     * large files, parseRecords() takes up much less memory.
+     *
+     * @param file the XML file.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the items, in document order.
+     */
+    public ArrayList<HashMap<String, String>> parse(File file, String... fields) throws IOException, XmlPullParserException {
+        ArrayList<FeedRecord> records = parseRecords(file, fields);
+        ArrayList<HashMap<String, String>> items = new ArrayList<HashMap<String, String>>(records.size());
+        for(FeedRecord record : records){
+            items.add(record.toHashMap());
+        }
+        return items;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * Cuts the file into chunks, starting to parse each one as soon as it is found.
+     *
+     * @return the chunks being parsed, in document order, or null if the file couldn't be cut up.
+     */
+    private ArrayList<ForkJoinTask<ArrayList<FeedRecord>>> submitChunks(final MappedFile mapped, final Charset charset,
+                                                                      final String tag, final FeedSchema schema) {
+        final ForkJoinPool chunkPool = getPool();
+        final ArrayList<ForkJoinTask<ArrayList<FeedRecord>>> chunks = new ArrayList<ForkJoinTask<ArrayList<FeedRecord>>>();
+
+        boolean split = new RecordSplitter(mapped, tag).split(chunkSize, new RecordSplitter.ChunkSink() {
+            @Override
+            public void onChunk(final long start, final long end) {
+                chunks.add(chunkPool.submit(new Callable<ArrayList<FeedRecord>>() {
+                    @Override
+                    public ArrayList<FeedRecord> call() throws Exception {
+                        InputStream chunk = new SequenceInputStream(new ByteArrayInputStream(CHUNK_START),
+                                new SequenceInputStream(mapped.openStream(start, end), new ByteArrayInputStream(CHUNK_END)));
+                        return parse(chunk, charset, tag, schema);
+                    }
+                }));
+            }
+        });
+
+        if(!split){
+            cancel(chunks);
+            return null;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the records of every chunk, in order, or null if one of them couldn't be parsed.
+     */
+    private ArrayList<FeedRecord> joinChunks(ArrayList<ForkJoinTask<ArrayList<FeedRecord>>> chunks) throws IOException {
+        ArrayList<ArrayList<FeedRecord>> parsed = new ArrayList<ArrayList<FeedRecord>>(chunks.size());
+        int total = 0;
+        try {
+            for(ForkJoinTask<ArrayList<FeedRecord>> chunk : chunks){
+                ArrayList<FeedRecord> records = chunk.get();
+                parsed.add(records);
+                total += records.size();
+            }
+        } catch (InterruptedException e) {
+            cancel(chunks);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            cancel(chunks);
+            if(e.getCause() instanceof XmlPullParserException){
+                return null;
+            }
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+
+        ArrayList<FeedRecord> records = new ArrayList<FeedRecord>(total);
+        for(ArrayList<FeedRecord> chunk : parsed){
+            records.addAll(chunk);
+        }
+        return records;
+    }
+
+    /**
+     * @return true if every field can be matched in a chunk, which holds the records without
+     *         the tags around them.
+     */
+    private static boolean isWithinRecords(FeedSchema schema, String tag) {
+        FieldMatcher matcher = schema.getMatcher();
+        for(int i = 0; i < schema.size(); i++){
+            FieldSelector selector = matcher.selectorAt(i);
+            if(selector != null && !selector.isWithinRecord(tag)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static XmlEncoding detectEncoding(MappedFile mapped) throws IOException {
+        byte[] prolog = new byte[XmlEncoding.PROLOG_LENGTH];
+        int length = 0;
+        int read;
+        InputStream head = mapped.openStream(0, Math.min(prolog.length, mapped.size()));
+        while(length < prolog.length && (read = head.read(prolog, length, prolog.length - length)) != -1){
+            length += read;
+        }
+        return XmlEncoding.detect(prolog, length);
+    }
+
+    private static ArrayList<FeedRecord> parse(InputStream stream, Charset charset, String tag, FeedSchema schema)
+            throws IOException, XmlPullParserException {
+        Reader reader = FeedParser.getReaderForXMLData(stream, charset);
+        XmlPullParser myParser = PullParsers.obtain(null, reader, false);
+        try {
+            return FeedParser.parseXMLFeedRecords(myParser, tag, schema);
+        } finally {
+            PullParsers.recycle(null, myParser);
+            reader.close();
+        }
+    }
+
+    private static void cancel(ArrayList<ForkJoinTask<ArrayList<FeedRecord>>> chunks) {
+        for(ForkJoinTask<ArrayList<FeedRecord>> chunk : chunks){
+            chunk.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.odie.animehub;
+
+import java.util.HashMap;
+
+/**
+ * Receives the items of a feed one by one as they are parsed.
+ */
+public interface FeedItemListener {
+
+    void onItem(HashMap<String, String> item);
+
+    void onError(Exception e);
+
+    void onEnd();
+}
@@ -0,0 +1,13 @@
+package com.odie.animehub;
+
+/**
+ * Receives the messages logged while fetching and parsing feeds, so they can be sent wherever
+ * the platform expects them: logcat on Android, or the logging framework of a server.
+ * JavaUtilLogger is used unless another one is set.
+ */
+public interface FeedLogger {
+
+    void debug(String tag, String message);
+
+    void error(String tag, String message, Throwable error);
+}
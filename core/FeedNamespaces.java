@@ -0,0 +1,56 @@
+package com.odie.animehub;
+
+import java.util.HashMap;
+
+/**
+ * Namespaces commonly found in feeds. In namespace-aware mode (see
+ * FeedParser.setNamespaceAware()) a field can name a tag in one of these by its usual prefix,
+ * e.g. "media:thumbnail@url", and it is matched by namespace whatever prefix the feed actually
+ * uses. Any other namespace can be given in full, e.g. "{http://example.com/ns}tag".
+ */
+public final class FeedNamespaces {
+
+    /** Prefix "atom" **/
+    public static final String ATOM = "http://www.w3.org/2005/Atom";
+
+    /** Prefix "dc" **/
+    public static final String DUBLIN_CORE = "http://purl.org/dc/elements/1.1/";
+
+    /** Prefix "content" **/
+    public static final String CONTENT = "http://purl.org/rss/1.0/modules/content/";
+
+    /** Prefix "itunes" **/
+    public static final String ITUNES = "http://www.itunes.com/dtds/podcast-1.0.dtd";
+
+    /** Prefix "media" **/
+    public static final String MEDIA = "http://search.yahoo.com/mrss/";
+
+    /** Prefix "sy" **/
+    public static final String SYNDICATION = "http://purl.org/rss/1.0/modules/syndication/";
+
+    /** Prefix "xml" **/
+    public static final String XML = "http://www.w3.org/XML/1998/namespace";
+
+    private static final HashMap<String, String> PREFIXES = new HashMap<String, String>();
+
+    static {
+        PREFIXES.put("atom", ATOM);
+        PREFIXES.put("dc", DUBLIN_CORE);
+        PREFIXES.put("content", CONTENT);
+        PREFIXES.put("itunes", ITUNES);
+        PREFIXES.put("media", MEDIA);
+        PREFIXES.put("sy", SYNDICATION);
+        PREFIXES.put("xml", XML);
+    }
+
+    private FeedNamespaces() {
+    }
+
+    /**
+     * @param prefix a namespace prefix.
+     * @return the namespace usually bound to the prefix, or null if it isn't one of the above.
+     */
+    public static String forPrefix(String prefix) {
+        return PREFIXES.get(prefix);
+    }
+}
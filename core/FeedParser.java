@@ -0,0 +1,1263 @@
+package com.odie.animehub;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches and parses XML files without depending on Android, so the same code can run on a
+ * server or in plain JVM benchmarks. Fetches run on an executor and are made through an
+ * HttpTransport, and anything worth logging goes to a FeedLogger; all three can be swapped out.
+ * OEXMLParser builds on this with AsyncTask based methods for Android.
+ */
+public class FeedParser {
+
+    private static final String TAG = FeedParser.class.getSimpleName();
+    private static final int EMPTY_RESPONSE_PEEK_LENGTH = 64;
+
+    private static FeedLogger defaultLogger = new JavaUtilLogger();
+    private static FetchMetricsListener defaultMetricsListener;
+
+    private String urlString;
+    private XmlPullParserFactory xmlFactoryObject;
+    private ArrayList<HashMap<String, String>> results;
+    private String recordTag;
+    private boolean itemRecordsByDefault;
+    private int itemLimit;
+    private FeedStopCondition stopCondition;
+    private boolean namespaceAware;
+    private boolean deltaMode;
+    private final ItemFingerprints fingerprints = new ItemFingerprints();
+    private Executor executor;
+    private FeedCache feedCache;
+    private HttpTransport transport;
+    private FeedLogger logger;
+    private FetchMetricsListener metricsListener;
+    public volatile boolean parsingComplete = true;
+
+    /** CONSTRUCTOR **/
+    public FeedParser(String url){
+        this.urlString = url;
+        this.results = new ArrayList<HashMap<String, String>>();
+    }
+
+    /** GETTERS AND SETTERS **/
+    public String getUrlString() {
+        return urlString;
+    }
+
+    public void setUrlString(String urlString) {
+        this.urlString = urlString;
+    }
+
+    /**
+     * @return the factory parsers are made with, or null if the shared default one is used.
+     */
+    public XmlPullParserFactory getXmlFactoryObject() {
+        return xmlFactoryObject;
+    }
+
+    /**
+     * Sets the factory parsers are made with. By default a shared factory is used and each
+     * thread reuses its parser from one fetch to the next; with a factory of your own, every
+     * fetch gets a new parser from it.
+     *
+     * @param xmlFactoryObject factory to use, or null for the shared default.
+     */
+    public void setXmlFactoryObject(XmlPullParserFactory xmlFactoryObject) {
+        this.xmlFactoryObject = xmlFactoryObject;
+    }
+
+    public ArrayList<HashMap<String, String>> getResults() {
+        return results;
+    }
+
+    public void setResults(ArrayList<HashMap<String, String>> results) {
+        this.results = results;
+    }
+
+    public String getRecordTag() {
+        return recordTag;
+    }
+
+    /**
+     * Sets the tag that encloses each record in the XML (e.g. "item" or "entry"). When set, the
+     * values of the requested tags are grouped by the record they appear in, so items missing a
+     * tag and tags outside any record (like the channel title) no longer throw the results out
+     * of line. When null (the default), values are lined up by position as before. Fields
+     * starting with "/" found outside the records, like "/rss/channel/ttl", are added to each
+     * record after them.
+     *
+     * @param recordTag name of the enclosing tag, or null.
+     */
+    public void setRecordTag(String recordTag) {
+        this.recordTag = recordTag;
+    }
+
+    /**
+     * Sets whether values are grouped by &lt;item&gt; and &lt;entry&gt; records when no record
+     * tag is set, instead of being lined up by position.
+     */
+    void setItemRecordsByDefault(boolean itemRecordsByDefault) {
+        this.itemRecordsByDefault = itemRecordsByDefault;
+    }
+
+    public int getItemLimit() {
+        return itemLimit;
+    }
+
+    /**
+     * Sets the most items a fetch reads. Once that many have been parsed, the rest of the feed
+     * is neither parsed nor downloaded. Items are found by the record tag, or <item> and
+     * <entry> if none has been set, and grouped by record as with setRecordTag().
+     *
+     * @param itemLimit most items to read, or 0 (the default) for all of them.
+     */
+    public void setItemLimit(int itemLimit) {
+        if(itemLimit < 0){
+            throw new IllegalArgumentException("itemLimit can't be negative");
+        }
+        this.itemLimit = itemLimit;
+    }
+
+    public FeedStopCondition getStopCondition() {
+        return stopCondition;
+    }
+
+    /**
+     * Sets where a fetch stops reading the feed, e.g. FeedStopCondition.atId() with the newest
+     * item seen last time. The rest of the feed is neither parsed nor downloaded. Items are
+     * grouped by record as with setItemLimit(), and fetches with a stop condition don't go
+     * through the cache, since what is new depends on the condition.
+     *
+     * @param stopCondition the condition, or null (the default) to read the whole feed.
+     */
+    public void setStopCondition(FeedStopCondition stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+
+    public boolean isNamespaceAware() {
+        return namespaceAware;
+    }
+
+    /**
+     * Sets whether namespaces are processed. When they are, a field can name a tag by its
+     * namespace rather than by the prefix a feed happens to use, either with a prefix from
+     * FeedNamespaces ("media:thumbnail@url" matches whatever prefix the feed binds to Media RSS)
+     * or in full ("{http://search.yahoo.com/mrss/}thumbnail@url"). Names without a prefix match
+     * the same tags as before. Feeds that use a prefix without declaring it can't be parsed in
+     * this mode.
+     *
+     * @param namespaceAware true to process namespaces, false (the default) to match tags by
+     *                       their names as written.
+     */
+    public void setNamespaceAware(boolean namespaceAware) {
+        this.namespaceAware = namespaceAware;
+    }
+
+    public boolean isDeltaMode() {
+        return deltaMode;
+    }
+
+    /**
+     * Sets whether fetches return only the items that are new or have changed since the last
+     * fetch, rather than all of them. The parser keeps a 64 bit fingerprint of each item of the
+     * last fetch to compare against, and an item whose tags or values differ in any way counts
+     * as changed. A fetch that fails leaves the fingerprints as they were. Applies to fetch(),
+     * fetchWithAuthentication() and fetchItems(), including the first fetch, which returns
+     * every item.
+     *
+     * @param deltaMode true to return only new and changed items, false (the default) for all
+     *                  of them.
+     */
+    public void setDeltaMode(boolean deltaMode) {
+        this.deltaMode = deltaMode;
+    }
+
+    /**
+     * Forgets the items seen so far in delta mode, so the next fetch returns all of them.
+     */
+    public void resetDelta() {
+        fingerprints.clear();
+    }
+
+    /**
+     * @return the executor fetches are run on, or the shared FetchExecutors.getDefault() one
+     * if none has been set.
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : FetchExecutors.getDefault();
+    }
+
+    /**
+     * Sets the executor fetches are run on, e.g. one made by FetchExecutors. Use this to give a
+     * group of parsers its own concurrency limit instead of sharing the default executor.
+     *
+     * @param executor executor to run fetches on, or null for the shared default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    /**
+     * Sets the cache used to make conditional requests. When set, the ETag and Last-Modified
+     * headers of each fetch are remembered, and if the feed has not changed next time round the
+     * cached results are used instead of downloading and parsing it again. The same cache can be
+     * shared by any number of parsers.
+     *
+     * @param feedCache cache to use, or null (the default) to always fetch the whole feed.
+     */
+    public void setFeedCache(FeedCache feedCache) {
+        this.feedCache = feedCache;
+    }
+
+    /**
+     * @return the transport requests are made through, or the shared
+     * URLConnectionTransport.getDefault() one if none has been set.
+     */
+    public HttpTransport getTransport() {
+        return transport != null ? transport : URLConnectionTransport.getDefault();
+    }
+
+    /**
+     * Sets the transport requests are made through, e.g. a URLConnectionTransport with its own
+     * timeouts and connection limits, or a StubHttpTransport in tests.
+     *
+     * @param transport transport to use, or null for the shared default.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the logger messages are sent to, or the default one if none has been set.
+     */
+    public FeedLogger getLogger() {
+        return logger != null ? logger : getDefaultLogger();
+    }
+
+    /**
+     * @param logger logger to send messages to, or null for the default one.
+     */
+    public void setLogger(FeedLogger logger) {
+        this.logger = logger;
+    }
+
+    public static synchronized FeedLogger getDefaultLogger() {
+        return defaultLogger;
+    }
+
+    /**
+     * Sets the logger used by every parser that has not been given one of its own.
+     *
+     * @param logger the logger, e.g. one passing messages on to the server's logging framework.
+     */
+    public static synchronized void setDefaultLogger(FeedLogger logger) {
+        defaultLogger = logger;
+    }
+
+    /**
+     * @return the listener metrics are reported to, or the default one if none has been set.
+     */
+    public FetchMetricsListener getMetricsListener() {
+        return metricsListener != null ? metricsListener : getDefaultMetricsListener();
+    }
+
+    /**
+     * Sets the listener the FetchMetrics of each fetch are reported to: how long it queued,
+     * connected, downloaded and parsed for, how much it read, how many items it found, how the
+     * cache took part and why it failed, if it did. Without a listener nothing is measured.
+     *
+     * @param metricsListener listener to report to, or null for the default one.
+     */
+    public void setMetricsListener(FetchMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public static synchronized FetchMetricsListener getDefaultMetricsListener() {
+        return defaultMetricsListener;
+    }
+
+    /**
+     * Sets the listener used by every parser that has not been given one of its own.
+     *
+     * @param metricsListener the listener, or null (the default) for none.
+     */
+    public static synchronized void setDefaultMetricsListener(FetchMetricsListener metricsListener) {
+        defaultMetricsListener = metricsListener;
+    }
+
+    public boolean isParsingComplete() {
+        return parsingComplete;
+    }
+
+    public void setParsingComplete(boolean parsingComplete) {
+        this.parsingComplete = parsingComplete;
+    }
+
+    /**
+     * Fetches and parses the xml file only paying attention to the tags specified.
+     *
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags ("title", "link", "description" and
+     *               "image") are parsed.
+     * @return the pending results, which are also available from getResults() once complete.
+     */
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetch(final String... fields){
+        return fetchAndStore(null, null, fields);
+    }
+
+    /**
+     * Fetches and parses a remote XML file that requires authentication to access.
+     *
+     * @param username username for authentication.
+     * @param password password for authentication.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the pending results, which are also available from getResults() once complete.
+     */
+    public FetchFuture<ArrayList<HashMap<String, String>>> fetchWithAuthentication(final String username, final String password, final String... fields){
+        return fetchAndStore(username, password, fields);
+    }
+
+    /**
+     * Parses the xml file and hands each item to the listener as soon as its closing tag has
+     * been read. Listener methods are called on the thread doing the parsing.
+     *
+     * @param listener Receives each item as it is parsed, followed by onEnd() or onError().
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return a future that completes once every item has been delivered.
+     */
+    public FetchFuture<Void> fetchItems(final FeedItemListener listener, final String... fields){
+        final FetchFuture<Void> future = new FetchFuture<Void>();
+        trackMetrics(future);
+        final HttpTransport transport = getTransport();
+
+        Runnable fetchTask = new Runnable(){
+            @Override
+            public void run() {
+                // Cancelled before it got to run
+                if(future.isDone()){
+                    return;
+                }
+
+                try {
+                    streamItems(transport, future, null, null, listener, fields);
+                    listener.onEnd();
+                    future.complete(null);
+                } catch (Exception e) {
+                    getLogger().error(TAG, "Error parsing " + urlString, e);
+                    listener.onError(e);
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            getExecutor().execute(fetchTask);
+        } catch (RejectedExecutionException e) {
+            rejected(future, e);
+            listener.onError(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Fetches and parses the xml file record by record into compact FeedRecords, which take up
+     * much less memory than the HashMaps returned by fetch() when there are lots of items. The
+     * record tag is used to find the records, or <item> and <entry> if none has been set.
+     * These results are neither stored nor cached.
+     *
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the pending records, all sharing the same FeedSchema.
+     */
+    public FetchFuture<ArrayList<FeedRecord>> fetchRecords(String... fields){
+        final FetchFuture<ArrayList<FeedRecord>> future = new FetchFuture<ArrayList<FeedRecord>>();
+        trackMetrics(future);
+        final HttpTransport transport = getTransport();
+        final FeedSchema schema = new FeedSchema(fieldsOrDefault(fields));
+
+        Runnable fetchTask = new Runnable(){
+            @Override
+            public void run() {
+                // Cancelled before it got to run
+                if(future.isDone()){
+                    return;
+                }
+
+                try {
+                    final ArrayList<FeedRecord> records = new ArrayList<FeedRecord>();
+                    streamRecords(transport, future, null, null, schema, new RecordSink() {
+                        @Override
+                        public boolean onRecord(String[] values) {
+                            records.add(new FeedRecord(schema, values));
+                            return true;
+                        }
+                    });
+                    future.complete(records);
+                } catch (Exception e) {
+                    getLogger().error(TAG, "Error parsing " + urlString, e);
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            getExecutor().execute(fetchTask);
+        } catch (RejectedExecutionException e) {
+            rejected(future, e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Parses a local XML file, e.g. a feed saved to disk, the way fetch() parses a downloaded
+     * one. The file is mapped into memory and parsed straight from there. Its encoding is
+     * worked out from its byte order mark or XML declaration, and is UTF-8 if it has neither.
+     * The parsing is done on the calling thread and the results are not stored.
+     *
+     * @param path the XML file.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the parsed results, or in delta mode only those that are new or have changed.
+     */
+    public ArrayList<HashMap<String, String>> parse(Path path, String... fields) throws IOException, XmlPullParserException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE){
+                // Too big to map in one go
+                return parse(channel, fields);
+            }
+            // The mapping stays valid once the channel is closed
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), fields);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Parses XML held in a buffer, e.g. a mapped file or a cached response, as parse(Path) does.
+     *
+     * @param buffer the XML data, from its position to its limit. The buffer itself is left
+     *               as it is.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the parsed results, or in delta mode only those that are new or have changed.
+     */
+    public ArrayList<HashMap<String, String>> parse(ByteBuffer buffer, String... fields) throws IOException, XmlPullParserException {
+        return parseLocal(new ByteBufferInputStream(buffer), fields);
+    }
+
+    /**
+     * Parses XML read from a channel, as parse(Path) does.
+     *
+     * @param channel the XML data, which is read up to the end of the document but not closed.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     * @return the parsed results, or in delta mode only those that are new or have changed.
+     */
+    public ArrayList<HashMap<String, String>> parse(ReadableByteChannel channel, String... fields) throws IOException, XmlPullParserException {
+        return parseLocal(Channels.newInputStream(channel), fields);
+    }
+
+    /**
+     * Fetches and parses the xml file on the executor, storing the results.
+     *
+     * @param username username for authentication, or null.
+     * @param password password for authentication, or null.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     * @return the pending results.
+     */
+    private FetchFuture<ArrayList<HashMap<String, String>>> fetchAndStore(final String username, final String password, final String... fields){
+        final FetchFuture<ArrayList<HashMap<String, String>>> future = new FetchFuture<ArrayList<HashMap<String, String>>>();
+        trackMetrics(future);
+        final FeedCache cache = feedCache;
+        final HttpTransport transport = getTransport();
+
+        Runnable fetchTask = new Runnable(){
+            @Override
+            public void run() {
+                // Cancelled before it got to run
+                if(future.isDone()){
+                    return;
+                }
+
+                try {
+                    ArrayList<HashMap<String, String>> parsed = load(transport, cache, future, username, password, fields);
+
+                    // Clear results (in case it contains values from a previous query)
+                    results.clear();
+                    results.addAll(parsed);
+                    parsingComplete = false;
+                    future.complete(parsed);
+                } catch (Exception e) {
+                    getLogger().error(TAG, "Error parsing " + urlString, e);
+                    parsingComplete = false;
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            getExecutor().execute(fetchTask);
+        } catch (RejectedExecutionException e) {
+            rejected(future, e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Fetches and parses the XML file on the calling thread, going through the cache if there
+     * is one. Unlike fetch(), the results are not stored.
+     *
+     * @param transport transport to make the request through.
+     * @param cache cache to go through, or null.
+     * @param future future of the fetch, which is given the response so it can be cancelled.
+     * @param username username for authentication, or null.
+     * @param password password for authentication, or null.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     * @return the parsed results, or in delta mode only those that are new or have changed.
+     */
+    ArrayList<HashMap<String, String>> load(final HttpTransport transport, FeedCache cache, final FetchFuture<?> future,
+                                            final String username, final String password, final String... fields) throws Exception {
+        future.markStarted();
+
+        ArrayList<HashMap<String, String>> parsed;
+        if(cache != null && stopCondition == null){
+            // Stays a hit unless the cache has to go to the network
+            future.setCacheOutcome(FetchMetrics.CacheOutcome.HIT);
+            parsed = cache.fetch(getCacheKey(username, password, fields), future, new FeedCache.Loader() {
+                @Override
+                public FeedCache.Entry load(String key, FeedCache.Entry cached) throws Exception {
+                    try {
+                        return download(transport, future, username, password, key, cached, fields);
+                    } catch (Exception e) {
+                        // Cancelled or timed out, so other fetches waiting on this one try for themselves
+                        if(future.isDone()){
+                            CancellationException abandoned = new CancellationException("Fetch of " + urlString + " was abandoned");
+                            abandoned.initCause(e);
+                            throw abandoned;
+                        }
+                        throw e;
+                    }
+                }
+            });
+        }
+        else{
+            parsed = download(transport, future, username, password, null, null, fields).results;
+        }
+
+        future.setItemCount(parsed.size());
+        if(deltaMode){
+            parsed = fingerprints.changedItems(parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Has the future report its metrics to the metrics listener, if there is one.
+     */
+    void trackMetrics(FetchFuture<?> future) {
+        FetchMetricsListener listener = getMetricsListener();
+        if(listener != null){
+            future.trackMetrics(urlString, listener);
+        }
+    }
+
+    /**
+     * Fails a fetch the executor had no room for.
+     */
+    void rejected(FetchFuture<?> future, RejectedExecutionException e) {
+        getLogger().error(TAG, "No room on the executor to fetch " + urlString, e);
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * Downloads and parses the XML file.
+     *
+     * @param transport transport to make the request through.
+     * @param future future of the fetch, which is given the response so it can be cancelled.
+     * @param username username for authentication, or null.
+     * @param password password for authentication, or null.
+     * @param cacheKey key the results are to be cached under, or null.
+     * @param cached cached copy of the feed to revalidate, or null to fetch it unconditionally.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     * @return cached revalidated if the feed has not changed, otherwise the freshly parsed results.
+     */
+    private FeedCache.Entry download(HttpTransport transport, FetchFuture<?> future, String username, String password,
+                                     String cacheKey, FeedCache.Entry cached, String... fields) throws Exception {
+        HttpTransport.Response response = openResponse(transport, urlString, username, password, cached);
+        future.setResponse(response);
+
+        try {
+            int statusCode = response.getStatusCode();
+            future.markResponse(statusCode);
+
+            // Feed hasn't changed since it was cached
+            if(cached != null && statusCode == HttpURLConnection.HTTP_NOT_MODIFIED){
+                future.setCacheOutcome(FetchMetrics.CacheOutcome.NOT_MODIFIED);
+                return cached.revalidated(response.getHeader("ETag"), response.getHeader("Last-Modified"));
+            }
+            if(cacheKey != null){
+                future.setCacheOutcome(FetchMetrics.CacheOutcome.MISS);
+            }
+
+            InputStream stream = getInputStream(response, future);
+
+            // Stream XML data straight to the parser, decoding entities on the way
+            BufferedReader reader = getReaderForXMLData(stream);
+
+            if(isEmptyResponse(reader)){
+                reader.close();
+                return new FeedCache.Entry(cacheKey, null, null, new ArrayList<HashMap<String, String>>());
+            }
+
+            ArrayList<HashMap<String, String>> parsed;
+            try {
+                parsed = parseXMLData(reader, response, fields);
+            } finally {
+                future.markParsed();
+            }
+            reader.close();
+
+            return new FeedCache.Entry(cacheKey, response.getHeader("ETag"), response.getHeader("Last-Modified"), parsed);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Downloads the XML file on the calling thread and hands each item to the listener as soon
+     * as it is parsed. The listener's onEnd() and onError() are left to the caller.
+     *
+     * @param transport transport to make the request through.
+     * @param future future of the fetch, which is given the response so it can be cancelled.
+     * @param username username for authentication, or null.
+     * @param password password for authentication, or null.
+     * @param listener Receives each item as it is parsed, or in delta mode each item that is new
+     *                 or has changed.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     */
+    void streamItems(HttpTransport transport, FetchFuture<?> future, String username, String password,
+                     final FeedItemListener listener, String... fields) throws Exception {
+        final FeedSchema schema = new FeedSchema(fieldsOrDefault(fields));
+        final ItemFingerprints.Delta delta = deltaMode ? fingerprints.newDelta(0) : null;
+
+        streamRecords(transport, future, username, password, schema, new RecordSink() {
+            @Override
+            public boolean onRecord(String[] values) {
+                HashMap<String, String> item = new FeedRecord(schema, values).toHashMap();
+                if(delta == null || delta.add(item)){
+                    listener.onItem(item);
+                }
+                return true;
+            }
+        });
+
+        if(delta != null){
+            delta.commit();
+        }
+    }
+
+    /**
+     * Downloads the XML file on the calling thread and hands the values of each record to the
+     * sink as soon as it is parsed.
+     *
+     * @param transport transport to make the request through.
+     * @param future future of the fetch, which is given the response so it can be cancelled.
+     * @param username username for authentication, or null.
+     * @param password password for authentication, or null.
+     * @param schema the tags to be parsed.
+     * @param sink Receives the values of each record as it is parsed.
+     */
+    private void streamRecords(HttpTransport transport, FetchFuture<?> future, String username, String password,
+                               FeedSchema schema, RecordSink sink) throws Exception {
+        future.markStarted();
+        HttpTransport.Response response = openResponse(transport, urlString, username, password, null);
+        future.setResponse(response);
+
+        try {
+            future.markResponse(response.getStatusCode());
+            InputStream stream = getInputStream(response, future);
+
+            // Stream XML data straight to the parser, decoding entities on the way
+            BufferedReader reader = getReaderForXMLData(stream);
+
+            if(!isEmptyResponse(reader)){
+                XmlPullParserFactory factory = xmlFactoryObject;
+                XmlPullParser myParser = PullParsers.obtain(factory, reader, namespaceAware);
+                try {
+                    ItemLimiter limiter = new ItemLimiter(schema, sink);
+                    parseXMLRecordValues(myParser, recordTag, schema, limiter);
+                    future.setItemCount(limiter.getCount());
+
+                    // Don't download the rest of the feed
+                    if(limiter.isStopped()){
+                        response.abort();
+                    }
+                } finally {
+                    future.markParsed();
+                    PullParsers.recycle(factory, myParser);
+                }
+            }
+            reader.close();
+        } finally {
+            response.close();
+        }
+    }
+
+
+    /**
+     * Helper method to parse XML only paying attention to the specified tags.
+     *
+     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return the parsed results.
+     */
+    private ArrayList<HashMap<String, String>> parseXML(XmlPullParser myParser, String... fields)
+            throws XmlPullParserException, IOException {
+        if(recordTag != null || itemRecordsByDefault){
+            return parseXMLRecords(myParser, recordTag, fields);
+        }
+
+        int event;
+
+        // 2d Array - where row is "required xml field" and column is "array of values for that field"
+        final ArrayList<ArrayList<String>> listOfFieldValues = new ArrayList<ArrayList<String>>();
+
+        // Initialize list of field values
+        for(int i = 0; i < fields.length; i++){
+            listOfFieldValues.add(new ArrayList<String>());
+        }
+
+        FieldCapture capture = new FieldCapture(myParser, new FieldMatcher(fields), new FieldCapture.FieldSink() {
+            @Override
+            public void onField(int index, String value) {
+                listOfFieldValues.get(index).add(value);
+            }
+        });
+
+        event = myParser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            switch (event){
+                case XmlPullParser.START_TAG:
+                    capture.startTag(myParser);
+                    break;
+                case XmlPullParser.TEXT:
+                    capture.text(myParser);
+                    break;
+
+                case XmlPullParser.END_TAG:
+                    // get data of required fields
+                    capture.endTag(myParser);
+                    break;
+            }
+            event = myParser.next();
+
+        }
+
+        ArrayList<HashMap<String, String>> parsed = new ArrayList<HashMap<String, String>>();
+
+        // populate results variable with a dictionary where each key corresponds to a
+        // specified xml field and maps to an array containing all the values of said field.
+        if(!listOfFieldValues.isEmpty()){
+            for(int i = 0; i < listOfFieldValues.get(0).size(); i++){
+                HashMap<String, String> entry = new HashMap<String, String>();
+
+                for(int j = 0; j < fields.length; j++){
+                    if(listOfFieldValues.get(j).size() > i){
+                        entry.put(fields[j], listOfFieldValues.get(j).get(i));
+                    }
+                }
+
+                parsed.add(entry);
+            }
+        }
+
+        return parsed;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * @param fields the tags asked for, or none.
+     * @return the tags asked for, or the default tags ("title", "link", "description" and
+     *         "image") if none were.
+     */
+    static String[] fieldsOrDefault(String... fields) {
+        if(fields == null || fields.length == 0){
+            return new String[]{"title", "link", "description", "image"};
+        }
+        return fields;
+    }
+
+    /**
+     * Sends a GET request for the XML file.
+     *
+     * @param transport transport to make the request through.
+     * @param urlString URL of the XML file.
+     * @param username username for authentication, or null if not needed.
+     * @param password password for authentication, or null if not needed.
+     * @param cached cached copy of the feed to revalidate, or null to fetch it unconditionally.
+     * @return the response, which must be closed once finished with.
+     */
+    private static HttpTransport.Response openResponse(HttpTransport transport, String urlString, String username,
+                                                       String password, FeedCache.Entry cached) throws IOException {
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept-Encoding", "gzip, deflate");
+        if(username != null && password != null){
+            String basicAuth = username + ":" + password;
+            basicAuth = "Basic " + Base64.getEncoder().encodeToString(basicAuth.getBytes());
+            headers.put("Authorization",basicAuth);
+        }
+        if(cached != null){
+            if(cached.eTag != null){
+                headers.put("If-None-Match", cached.eTag);
+            }
+            if(cached.lastModified != null){
+                headers.put("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return transport.get(urlString, headers);
+    }
+
+    /**
+     * Parses XML data the way this parser has been set up to: by record if there is a record
+     * tag, item limit or stop condition, and with or without namespaces.
+     *
+     * @param reader reader returned by getReaderForXMLData().
+     * @param response response the data is being read from, which is cut off if parsing stops
+     *                 early, or null.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     * @return the parsed results.
+     */
+    private ArrayList<HashMap<String, String>> parseXMLData(BufferedReader reader, HttpTransport.Response response, String... fields)
+            throws XmlPullParserException, IOException {
+        XmlPullParserFactory factory = xmlFactoryObject;
+        XmlPullParser myParser = PullParsers.obtain(factory, reader, namespaceAware);
+        try {
+            if(itemLimit > 0 || stopCondition != null){
+                final FeedSchema schema = new FeedSchema(fieldsOrDefault(fields));
+                final ArrayList<HashMap<String, String>> records = new ArrayList<HashMap<String, String>>();
+
+                ItemLimiter limiter = new ItemLimiter(schema, new RecordSink() {
+                    @Override
+                    public boolean onRecord(String[] values) {
+                        records.add(new FeedRecord(schema, values).toHashMap());
+                        return true;
+                    }
+                });
+                parseXMLRecordValues(myParser, recordTag, schema, limiter);
+
+                // Don't download the rest of the feed
+                if(limiter.isStopped() && response != null){
+                    response.abort();
+                }
+                return records;
+            }
+            else{
+                return parseXML(myParser, fieldsOrDefault(fields));
+            }
+        } finally {
+            PullParsers.recycle(factory, myParser);
+        }
+    }
+
+    /**
+     * Parses XML data from a local source on the calling thread, applying delta mode.
+     *
+     * @param stream the XML data, in whatever encoding it declares.
+     */
+    private ArrayList<HashMap<String, String>> parseLocal(InputStream stream, String... fields)
+            throws XmlPullParserException, IOException {
+        BufferedReader reader = getReaderDetectingEncoding(stream);
+        if(isEmptyResponse(reader)){
+            return new ArrayList<HashMap<String, String>>();
+        }
+
+        ArrayList<HashMap<String, String>> parsed = parseXMLData(reader, null, fields);
+        if(deltaMode){
+            parsed = fingerprints.changedItems(parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Gets the body of the response, decompressing it on the fly if the server sent it gzipped or
+     * deflated. The bytes received and the bytes after decompression are counted on the future.
+     *
+     * @param response response returned by openResponse().
+     * @param future future of the fetch.
+     * @return the decompressed XML data.
+     */
+    static InputStream getInputStream(HttpTransport.Response response, FetchFuture<?> future) throws IOException {
+        CountingInputStream received = new CountingInputStream(response.getBody(), future.isTrackingMetrics());
+        InputStream stream = received;
+
+        String encoding = response.getHeader("Content-Encoding");
+        if("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)){
+            stream = new GZIPInputStream(received);
+        }
+        else if("deflate".equalsIgnoreCase(encoding)){
+            // Servers send deflate both with and without the zlib header, so check which it is
+            PushbackInputStream pushback = new PushbackInputStream(received, 2);
+            byte[] header = new byte[2];
+            int count = pushback.read(header);
+            if(count > 0){
+                pushback.unread(header, 0, count);
+            }
+            boolean hasZlibHeader = count == 2 && (header[0] & 0x0F) == 8
+                    && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+            stream = new InflaterInputStream(pushback, new Inflater(!hasZlibHeader));
+        }
+
+        CountingInputStream decoded = new CountingInputStream(stream);
+        future.setByteCounters(received, decoded);
+        return decoded;
+    }
+
+    /**
+     * Wraps the XML data so that it can be handed straight to an XmlPullParser. HTML entities
+     * are decoded as the data is read, so the whole document is never held in memory.
+     *
+     * @param inputStream raw XML data.
+     * @return a reader over the decoded XML data.
+     */
+    static BufferedReader getReaderForXMLData(InputStream inputStream) throws UnsupportedEncodingException {
+        return new BufferedReader(new EntityDecodingReader(new InputStreamReader(inputStream, "UTF-8")));
+    }
+
+    /**
+     * @param inputStream raw XML data.
+     * @param charset encoding of the data.
+     * @return a reader over the decoded XML data.
+     */
+    static BufferedReader getReaderForXMLData(InputStream inputStream, Charset charset) {
+        return new BufferedReader(new EntityDecodingReader(new InputStreamReader(inputStream, charset)));
+    }
+
+    /**
+     * Like getReaderForXMLData(), but works out the encoding from the byte order mark or XML
+     * declaration of the data instead of taking it to be UTF-8.
+     *
+     * @param inputStream raw XML data.
+     * @return a reader over the decoded XML data.
+     */
+    static BufferedReader getReaderDetectingEncoding(InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, XmlEncoding.PROLOG_LENGTH);
+        byte[] prolog = new byte[XmlEncoding.PROLOG_LENGTH];
+        int length = 0;
+        int read;
+
+        buffered.mark(prolog.length);
+        while(length < prolog.length && (read = buffered.read(prolog, length, prolog.length - length)) != -1){
+            length += read;
+        }
+        buffered.reset();
+
+        XmlEncoding encoding = XmlEncoding.detect(prolog, length);
+        buffered.skip(encoding.getByteOrderMarkLength());
+        return getReaderForXMLData(buffered, encoding.getCharset());
+    }
+
+    /**
+     * Checks if the server sent back "No results" (or nothing at all) instead of XML. Only the
+     * first few characters are read and the reader is reset afterwards.
+     *
+     * @param reader reader returned by getReaderForXMLData().
+     * @return true if there is no XML to parse.
+     */
+    private static boolean isEmptyResponse(BufferedReader reader) throws IOException {
+        char[] start = new char[EMPTY_RESPONSE_PEEK_LENGTH];
+        int count = 0;
+        int read = 0;
+
+        reader.mark(start.length);
+        while(count < start.length && (read = reader.read(start, count, start.length - count)) != -1){
+            count += read;
+        }
+        reader.reset();
+
+        // Anything longer than this is not an empty response
+        if(read != -1){
+            return false;
+        }
+
+        String body = new String(start, 0, count).trim();
+        return body.isEmpty() || body.equalsIgnoreCase("No results");
+    }
+
+
+    /**
+     * Helper method to parse XML record by record. Each record is handed to the listener as soon
+     * as its closing tag is read, holding only the specified tags found inside it.
+     *
+     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param recordTag tag enclosing each record, or null for <item> (RSS) and <entry> (Atom).
+     * @param listener Receives each record as it is parsed.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If empty, the default tags are parsed.
+     */
+    static void parseXMLItems(XmlPullParser myParser, String recordTag, final FeedItemListener listener, String... fields)
+            throws XmlPullParserException, IOException {
+        final FeedSchema schema = new FeedSchema(fieldsOrDefault(fields));
+
+        parseXMLRecordValues(myParser, recordTag, schema, new RecordSink() {
+            @Override
+            public boolean onRecord(String[] values) {
+                listener.onItem(new FeedRecord(schema, values).toHashMap());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Helper method to parse XML into a list of records, only paying attention to the specified tags.
+     *
+     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param recordTag tag enclosing each record, or null for <item> (RSS) and <entry> (Atom).
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     * @return a dictionary for each record, where the keys are the XML tags.
+     */
+    static ArrayList<HashMap<String, String>> parseXMLRecords(XmlPullParser myParser, String recordTag, String... fields)
+            throws XmlPullParserException, IOException {
+        final ArrayList<HashMap<String, String>> records = new ArrayList<HashMap<String, String>>();
+
+        parseXMLItems(myParser, recordTag, new FeedItemListener() {
+            @Override
+            public void onItem(HashMap<String, String> item) {
+                records.add(item);
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+
+            @Override
+            public void onEnd() {
+            }
+        }, fields);
+
+        return records;
+    }
+
+    /**
+     * Helper method to parse XML into a list of compact records, only paying attention to the
+     * tags of the schema.
+     *
+     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param recordTag tag enclosing each record, or null for <item> (RSS) and <entry> (Atom).
+     * @param schema the tags to be parsed.
+     * @return a FeedRecord for each record.
+     */
+    static ArrayList<FeedRecord> parseXMLFeedRecords(XmlPullParser myParser, String recordTag, final FeedSchema schema)
+            throws XmlPullParserException, IOException {
+        final ArrayList<FeedRecord> records = new ArrayList<FeedRecord>();
+
+        parseXMLRecordValues(myParser, recordTag, schema, new RecordSink() {
+            @Override
+            public boolean onRecord(String[] values) {
+                records.add(new FeedRecord(schema, values));
+                return true;
+            }
+        });
+
+        return records;
+    }
+
+    /**
+     * Helper method to parse XML record by record, keeping the value of each tag of the schema
+     * in its slot. The values of each record are handed to the sink as soon as its closing tag
+     * is read. Anchored fields found outside the records (like "/rss/channel/ttl") are given
+     * to every record after them.
+     *
+     * @param myParser XmlPullParser instance to be used for parsing.
+     * @param recordTag tag enclosing each record, or null for <item> (RSS) and <entry> (Atom).
+     * @param schema the tags to be parsed.
+     * @param sink Receives the values of each record as it is parsed.
+     */
+    private static void parseXMLRecordValues(XmlPullParser myParser, String recordTag, FeedSchema schema, RecordSink sink)
+            throws XmlPullParserException, IOException {
+        int event;
+        int itemDepth = -1;
+        RecordValues record = new RecordValues(schema.getMatcher());
+        FieldCapture capture = new FieldCapture(myParser, schema.getMatcher(), record);
+
+        event = myParser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            switch (event){
+                case XmlPullParser.START_TAG:
+                    if(record.values == null && isRecordTag(myParser.getName(), recordTag)){
+                        record.values = record.outside != null ? record.outside.clone() : new String[schema.size()];
+                        itemDepth = myParser.getDepth();
+                    }
+                    capture.startTag(myParser);
+                    break;
+                case XmlPullParser.TEXT:
+                    if(record.values != null || record.outside != null){
+                        capture.text(myParser);
+                    }
+                    break;
+
+                case XmlPullParser.END_TAG:
+                    capture.endTag(myParser);
+
+                    if(record.values != null && myParser.getDepth() == itemDepth){
+                        // end of the record
+                        if(!sink.onRecord(record.values)){
+                            return;
+                        }
+                        record.values = null;
+                    }
+                    break;
+            }
+            event = myParser.next();
+        }
+    }
+
+    /**
+     * @return the key a fetch with these settings is cached under.
+     */
+    String getCacheKey(String username, String password, String... fields) {
+        String recordKey = recordTag;
+        if(recordTag == null && itemRecordsByDefault){
+            recordKey = "item|entry";
+        }
+        return FeedCache.key(urlString, username, password, recordKey, itemLimit, namespaceAware, fields);
+    }
+
+    static boolean isRecordTag(String name, String recordTag){
+        if(recordTag != null){
+            return name.equals(recordTag);
+        }
+        return name.equals("item") || name.equals("entry");
+    }
+
+
+    /** Receives the values of each record parsed by parseXMLRecordValues() **/
+    private interface RecordSink {
+
+        /**
+         * @return false to stop parsing.
+         */
+        boolean onRecord(String[] values);
+    }
+
+
+    /** Passes records on to another sink until the item limit or stop condition is reached **/
+    private class ItemLimiter implements RecordSink {
+
+        private final FeedSchema schema;
+        private final RecordSink sink;
+        private final int limit = itemLimit;
+        private final FeedStopCondition condition = stopCondition;
+        private int count;
+        private boolean stopped;
+
+        ItemLimiter(FeedSchema schema, RecordSink sink) {
+            this.schema = schema;
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean onRecord(String[] values) {
+            if(condition != null && condition.shouldStop(new FeedRecord(schema, values))){
+                stopped = true;
+                return false;
+            }
+            if(!sink.onRecord(values)){
+                return false;
+            }
+            if(++count == limit){
+                stopped = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the number of records passed on.
+         */
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return true if parsing was stopped before the end of the feed.
+         */
+        boolean isStopped() {
+            return stopped;
+        }
+    }
+
+
+    /** Keeps the values of the record being parsed by parseXMLRecordValues() **/
+    private static class RecordValues implements FieldCapture.FieldSink {
+
+        String[] values;
+
+        // Values of anchored fields found outside the records, or null if there are no anchored fields
+        final String[] outside;
+        private final boolean[] anchored;
+
+        RecordValues(FieldMatcher matcher) {
+            anchored = new boolean[matcher.size()];
+            boolean anyAnchored = false;
+            for(int i = 0; i < anchored.length; i++){
+                anchored[i] = matcher.selectorAt(i).isAnchored();
+                anyAnchored |= anchored[i];
+            }
+            outside = anyAnchored ? new String[anchored.length] : null;
+        }
+
+        @Override
+        public void onField(int index, String value) {
+            if(value == null){
+                return;
+            }
+            if(values != null){
+                values[index] = value;
+            }
+            else if(anchored[index]){
+                outside[index] = value;
+            }
+        }
+    }
+}
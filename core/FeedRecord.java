@@ -0,0 +1,128 @@
+package com.odie.animehub;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact alternative to a HashMap for each parsed item. The values are kept in a flat array
+ * with one slot per tag of a FeedSchema shared by every record of the fetch, so a record costs
+ * one small object and one array rather than a hash table with an entry object per tag. Looking
+ * up a tag by slot is a plain array access.
+ *
+ * Records can be read like any other Map, but can't be changed.
+ */
+public final class FeedRecord extends AbstractMap<String, String> {
+
+    private final FeedSchema schema;
+    private final String[] values;
+
+    /**
+     * @param schema schema of the record.
+     * @param values value of each slot of the schema, or null where the tag wasn't found.
+     */
+    FeedRecord(FeedSchema schema, String[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public FeedSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param index a slot of the schema, from FeedSchema.indexOf().
+     * @return the value of the tag in the slot, or null if it wasn't found in this record.
+     */
+    public String get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = key instanceof String ? schema.indexOf((String) key) : -1;
+        return index != -1 ? values[index] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(String value : values){
+            if(value != null){
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a HashMap holding the same tags, as returned by the other fetch methods.
+     */
+    public HashMap<String, String> toHashMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != null){
+                map.put(schema.fieldAt(i), values[i]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return FeedRecord.this.size();
+            }
+        };
+    }
+
+
+    /** Iterates over the slots that hold a value **/
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+        private int next = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(schema.fieldAt(next), values[next]);
+            next = advance(next + 1);
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private int advance(int from) {
+            while(from < values.length && values[from] == null){
+                from++;
+            }
+            return from;
+        }
+    }
+}
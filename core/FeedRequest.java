@@ -0,0 +1,66 @@
+package com.odie.animehub;
+
+/**
+ * One feed to fetch as part of a FeedBatch: its URL, the tags to parse and, if it needs them,
+ * the credentials to access it with.
+ */
+public class FeedRequest {
+
+    private final String urlString;
+    private final String[] fields;
+    private String username;
+    private String password;
+    private FeedStopCondition stopCondition;
+
+    /**
+     * @param urlString URL of the feed.
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If none are given, the default tags are parsed.
+     */
+    public FeedRequest(String urlString, String... fields) {
+        this.urlString = urlString;
+        this.fields = fields;
+    }
+
+    /** GETTERS AND SETTERS **/
+    public String getUrlString() {
+        return urlString;
+    }
+
+    public String[] getFields() {
+        return fields;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @param username username for authentication.
+     * @param password password for authentication.
+     */
+    public void setAuthentication(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    public FeedStopCondition getStopCondition() {
+        return stopCondition;
+    }
+
+    /**
+     * @param stopCondition where to stop reading this feed, see FeedParser.setStopCondition().
+     */
+    public void setStopCondition(FeedStopCondition stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+
+    @Override
+    public String toString() {
+        return urlString;
+    }
+}
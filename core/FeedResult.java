@@ -0,0 +1,43 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Outcome of fetching one feed of a FeedBatch: either its parsed results, or the error that
+ * stopped it from being fetched.
+ */
+public class FeedResult {
+
+    private final FeedRequest request;
+    private final ArrayList<HashMap<String, String>> results;
+    private final Throwable error;
+
+    FeedResult(FeedRequest request, ArrayList<HashMap<String, String>> results, Throwable error) {
+        this.request = request;
+        this.results = results;
+        this.error = error;
+    }
+
+    public FeedRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return the parsed results, or an empty list if the fetch failed.
+     */
+    public ArrayList<HashMap<String, String>> getResults() {
+        return results != null ? results : new ArrayList<HashMap<String, String>>();
+    }
+
+    /**
+     * @return what went wrong, or null if the feed was fetched.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+}
@@ -0,0 +1,770 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps feeds fresh by polling each of them about as often as it actually changes, rather than
+ * all of them on the same timer. New items are handed to a FeedUpdateListener.
+ *
+ * How often a feed is polled is worked out again after every poll:
+ *
+ * - If its items are dated, from how often it has been posting lately, and how long it has
+ *   been since it last did.
+ * - Otherwise by speeding up when a poll finds new items and slowing down when it doesn't.
+ *   Items are told apart by their "guid", "id" or "link", so ask for one of them.
+ * - Never more often than the feed itself asks for with <ttl> or <sy:updatePeriod> and
+ *   <sy:updateFrequency>, and always between getMinIntervalMillis() and getMaxIntervalMillis().
+ * - Backing off while polls keep failing.
+ *
+ * Each interval is jittered so feeds don't end up being polled in step, and no more than
+ * getMaxFetchesPerMinute() polls are started a minute across all feeds, spread out evenly.
+ *
+ * Feeds are fetched through a FeedCache, so a feed that hasn't changed only costs a 304 Not
+ * Modified if the server supports it. A 304 says the feed is just as it was, so the next poll is
+ * never sooner than the last one was, slowed down. If no cache is set, the scheduler keeps one of
+ * its own, and a feed's entry is dropped from it when the feed is removed.
+ */
+public class FeedScheduler {
+
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    public static final long DEFAULT_INITIAL_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final int DEFAULT_MAX_FETCHES_PER_MINUTE = 60;
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private static final String TAG = FeedScheduler.class.getSimpleName();
+
+    /** Channel tags with the feed's own idea of how often to poll it, in RSS 2.0, RSS 1.0 and Atom **/
+    static final String[] TTL_FIELDS = {"/rss/channel/ttl"};
+    static final String[] UPDATE_PERIOD_FIELDS = {"/rss/channel/sy:updatePeriod", "/rdf:RDF/channel/sy:updatePeriod",
+            "/feed/sy:updatePeriod"};
+    static final String[] UPDATE_FREQUENCY_FIELDS = {"/rss/channel/sy:updateFrequency", "/rdf:RDF/channel/sy:updateFrequency",
+            "/feed/sy:updateFrequency"};
+
+    /** How much the interval changes after a poll that found new items, and after one that didn't **/
+    private static final double SPEED_UP = 0.5;
+    private static final double SLOW_DOWN = 1.5;
+
+    /** Most of the newest dated items to work out how often a feed posts from **/
+    private static final int RECENT_ITEMS = 10;
+
+    private final FeedUpdateListener listener;
+    private final HashMap<FeedRequest, ScheduledFeed> feeds = new HashMap<FeedRequest, ScheduledFeed>();
+    private final PriorityQueue<ScheduledFeed> due = new PriorityQueue<ScheduledFeed>();
+
+    private long minIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private long maxIntervalMillis = DEFAULT_MAX_INTERVAL_MILLIS;
+    private long initialIntervalMillis = DEFAULT_INITIAL_INTERVAL_MILLIS;
+    private int maxFetchesPerMinute = DEFAULT_MAX_FETCHES_PER_MINUTE;
+    private double jitter = DEFAULT_JITTER;
+    private String recordTag;
+    private Executor executor;
+    private FeedCache feedCache = new FeedCache(Integer.MAX_VALUE, null);
+    private HttpTransport transport;
+    private FeedLogger logger;
+    private FetchMetricsListener metricsListener;
+
+    /** Null while stopped **/
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> wakeUp;
+
+    /** Earliest time the rate budget allows the next poll to start **/
+    private long nextFetchTime;
+
+    /**
+     * @param listener Receives the new items and errors of every feed.
+     */
+    public FeedScheduler(FeedUpdateListener listener) {
+        this.listener = listener;
+    }
+
+    /** GETTERS AND SETTERS **/
+    public synchronized long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    /**
+     * @param minIntervalMillis shortest time to leave between two polls of a feed.
+     */
+    public synchronized void setMinIntervalMillis(long minIntervalMillis) {
+        if(minIntervalMillis < 1){
+            throw new IllegalArgumentException("minIntervalMillis must be at least 1");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public synchronized long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    /**
+     * @param maxIntervalMillis longest time to leave between two polls of a feed.
+     */
+    public synchronized void setMaxIntervalMillis(long maxIntervalMillis) {
+        if(maxIntervalMillis < 1){
+            throw new IllegalArgumentException("maxIntervalMillis must be at least 1");
+        }
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    public synchronized long getInitialIntervalMillis() {
+        return initialIntervalMillis;
+    }
+
+    /**
+     * @param initialIntervalMillis time to leave between polls of a feed until there is
+     *                              something better to go on.
+     */
+    public synchronized void setInitialIntervalMillis(long initialIntervalMillis) {
+        if(initialIntervalMillis < 1){
+            throw new IllegalArgumentException("initialIntervalMillis must be at least 1");
+        }
+        this.initialIntervalMillis = initialIntervalMillis;
+    }
+
+    public synchronized int getMaxFetchesPerMinute() {
+        return maxFetchesPerMinute;
+    }
+
+    /**
+     * @param maxFetchesPerMinute most polls to start a minute, across all feeds.
+     */
+    public synchronized void setMaxFetchesPerMinute(int maxFetchesPerMinute) {
+        if(maxFetchesPerMinute < 1){
+            throw new IllegalArgumentException("maxFetchesPerMinute must be at least 1");
+        }
+        this.maxFetchesPerMinute = maxFetchesPerMinute;
+    }
+
+    public synchronized double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param jitter how far each interval may be moved at random, as a fraction of it (e.g. 0.1
+     *               for up to 10% either way), or 0 for none.
+     */
+    public synchronized void setJitter(double jitter) {
+        if(jitter < 0 || jitter >= 1){
+            throw new IllegalArgumentException("jitter must be at least 0 and less than 1");
+        }
+        this.jitter = jitter;
+    }
+
+    public synchronized String getRecordTag() {
+        return recordTag;
+    }
+
+    /**
+     * @param recordTag tag enclosing each record in every feed, see FeedParser.setRecordTag(),
+     *                  or null (the default) for <item> and <entry>.
+     */
+    public synchronized void setRecordTag(String recordTag) {
+        this.recordTag = recordTag;
+    }
+
+    public synchronized Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor executor to run fetches on, or null for the shared default.
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public synchronized FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    /**
+     * @param feedCache cache to fetch feeds through. Without one, every poll downloads and
+     *                  parses the whole feed.
+     */
+    public synchronized void setFeedCache(FeedCache feedCache) {
+        this.feedCache = feedCache;
+    }
+
+    public synchronized HttpTransport getTransport() {
+        return transport;
+    }
+
+    public synchronized void setTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public synchronized FeedLogger getLogger() {
+        return logger;
+    }
+
+    public synchronized void setLogger(FeedLogger logger) {
+        this.logger = logger;
+    }
+
+    public synchronized FetchMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * @param metricsListener listener the metrics of each poll are reported to, or null for the
+     *                        default one, see FeedParser.setMetricsListener().
+     */
+    public synchronized void setMetricsListener(FetchMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Adds a feed to poll. It is polled as soon as the rate budget allows, once started.
+     *
+     * @param request the feed, which is also how it is told apart in the listener.
+     */
+    public synchronized void add(FeedRequest request) {
+        if(feeds.containsKey(request)){
+            return;
+        }
+
+        ScheduledFeed feed = new ScheduledFeed(request, initialIntervalMillis);
+        feeds.put(request, feed);
+        due.add(feed);
+        wakeUp();
+    }
+
+    /**
+     * Stops polling a feed, cancelling its poll if one is under way, and drops it from the
+     * feed cache.
+     *
+     * @return true if the feed was being polled.
+     */
+    public boolean remove(FeedRequest request) {
+        ScheduledFeed feed;
+        FeedCache cache;
+        String cacheKey;
+        synchronized (this) {
+            feed = feeds.remove(request);
+            if(feed == null){
+                return false;
+            }
+
+            feed.removed = true;
+            due.remove(feed);
+            if(feed.fetch != null){
+                feed.fetch.cancel(true);
+            }
+            cache = feedCache;
+            cacheKey = feed.cacheKey;
+        }
+
+        // Outside the lock, as the cache may go to disk
+        if(cache != null && cacheKey != null){
+            cache.remove(cacheKey);
+        }
+        return true;
+    }
+
+    /**
+     * @return the feeds being polled.
+     */
+    public synchronized ArrayList<FeedRequest> getRequests() {
+        return new ArrayList<FeedRequest>(feeds.keySet());
+    }
+
+    /**
+     * @return how long the feed is currently left between polls, before jitter and backing off
+     *         after errors, or -1 if it isn't being polled.
+     */
+    public synchronized long getIntervalMillis(FeedRequest request) {
+        ScheduledFeed feed = feeds.get(request);
+        return feed != null ? feed.intervalMillis : -1;
+    }
+
+    /**
+     * @return how many polls of the feed in a row the server has answered with 304 Not
+     *         Modified, or -1 if it isn't being polled.
+     */
+    public synchronized int getNotModifiedCount(FeedRequest request) {
+        ScheduledFeed feed = feeds.get(request);
+        return feed != null ? feed.notModifiedCount : -1;
+    }
+
+    /**
+     * @return when the feed is next due to be polled, in milliseconds since the epoch, or -1 if
+     *         it isn't being polled or a poll of it is under way.
+     */
+    public synchronized long getNextPollTime(FeedRequest request) {
+        ScheduledFeed feed = feeds.get(request);
+        return feed != null && feed.fetch == null ? feed.nextPollTime : -1;
+    }
+
+    /**
+     * Starts polling. Feeds that came due while the scheduler was stopped are polled straight
+     * away, within the rate budget.
+     */
+    public synchronized void start() {
+        if(timer != null){
+            return;
+        }
+
+        ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("OEXMLParser-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduled.setRemoveOnCancelPolicy(true);
+        timer = scheduled;
+        wakeUp();
+    }
+
+    /**
+     * Stops polling, cancelling the polls under way. Those feeds are polled again as soon as
+     * the scheduler is restarted.
+     */
+    public synchronized void stop() {
+        if(timer == null){
+            return;
+        }
+
+        timer.shutdownNow();
+        timer = null;
+        wakeUp = null;
+        for(ScheduledFeed feed : feeds.values()){
+            if(feed.fetch != null){
+                feed.fetch.cancel(true);
+            }
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return timer != null;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * Schedules the next run of poll() for when the next feed is due and the rate budget
+     * allows it.
+     */
+    private void wakeUp() {
+        if(timer == null){
+            return;
+        }
+        if(wakeUp != null){
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+
+        ScheduledFeed next = due.peek();
+        if(next == null){
+            return;
+        }
+
+        long delay = Math.max(next.nextPollTime, nextFetchTime) - System.currentTimeMillis();
+        wakeUp = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Polls the next feed, if it is due. The poll is started once the lock has been let go, as
+     * the executor may make it wait for room, and the fetches it is waiting on need the lock to
+     * finish.
+     */
+    private void poll() {
+        ScheduledFeed feed = null;
+        FeedParser parser = null;
+
+        synchronized (this) {
+            if(timer == null){
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            ScheduledFeed next = due.peek();
+            if(next != null && next.nextPollTime <= now && nextFetchTime <= now){
+                feed = due.poll();
+                parser = newParser(feed.request);
+                nextFetchTime = now + TimeUnit.MINUTES.toMillis(1) / maxFetchesPerMinute;
+            }
+            wakeUp();
+        }
+
+        if(feed != null){
+            start(feed, parser);
+        }
+    }
+
+    private void start(final ScheduledFeed feed, FeedParser parser) {
+        String[] fields = withHintFields(feed.request.getFields());
+        final FetchFuture<ArrayList<HashMap<String, String>>> fetch;
+        String cacheKey;
+        if(feed.request.getUsername() != null && feed.request.getPassword() != null){
+            fetch = parser.fetchWithAuthentication(feed.request.getUsername(), feed.request.getPassword(), fields);
+            cacheKey = parser.getCacheKey(feed.request.getUsername(), feed.request.getPassword(), fields);
+        }
+        else{
+            fetch = parser.fetch(fields);
+            cacheKey = parser.getCacheKey(null, null, fields);
+        }
+
+        boolean stopped;
+        synchronized (this) {
+            feed.fetch = fetch;
+            feed.cacheKey = cacheKey;
+            stopped = feed.removed || timer == null;
+        }
+
+        // Removed or stopped while the poll was being started
+        if(stopped){
+            fetch.cancel(true);
+        }
+
+        // Added once feed.fetch is set, so finished() always comes after
+        fetch.whenComplete(new BiConsumer<ArrayList<HashMap<String, String>>, Throwable>() {
+            @Override
+            public void accept(ArrayList<HashMap<String, String>> results, Throwable error) {
+                finished(feed, fetch, results, error);
+            }
+        });
+    }
+
+    /**
+     * Works out when to poll a feed next from what its last poll found, and passes on the news.
+     */
+    private void finished(ScheduledFeed feed, FetchFuture<?> fetch, ArrayList<HashMap<String, String>> results, Throwable error) {
+        ArrayList<HashMap<String, String>> items = null;
+        ArrayList<HashMap<String, String>> newItems = null;
+
+        synchronized (this) {
+            feed.fetch = null;
+            if(feed.removed){
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+
+            // Cancelled by stop(), so try again once restarted
+            if(timer == null || fetch.isCancelled()){
+                feed.nextPollTime = now;
+                due.add(feed);
+                return;
+            }
+
+            if(error != null){
+                feed.errorCount++;
+            }
+            else{
+                boolean notModified = fetch.getCacheOutcome() == FetchMetrics.CacheOutcome.NOT_MODIFIED;
+                feed.notModifiedCount = notModified ? feed.notModifiedCount + 1 : 0;
+
+                items = new ArrayList<HashMap<String, String>>(results.size());
+                long hintMillis = readHints(results, items);
+                newItems = feed.update(items);
+                feed.intervalMillis = nextInterval(feed, items, !newItems.isEmpty(), notModified, hintMillis, now);
+                feed.errorCount = 0;
+            }
+
+            feed.nextPollTime = now + jittered(backedOff(feed.intervalMillis, feed.errorCount));
+            due.add(feed);
+            wakeUp();
+        }
+
+        try {
+            if(error != null){
+                listener.onError(feed.request, error);
+            }
+            else if(!newItems.isEmpty()){
+                listener.onUpdate(feed.request, newItems, items);
+            }
+        } catch (RuntimeException e) {
+            getLoggerOrDefault().error(TAG, "Error in update listener for " + feed.request, e);
+        }
+    }
+
+    /**
+     * @param feed the feed just polled.
+     * @param items its items.
+     * @param changed whether the poll found new items.
+     * @param notModified whether the server answered the poll with 304 Not Modified.
+     * @param hintMillis shortest interval the feed asks for, or 0.
+     * @return how long to leave before polling it again.
+     */
+    private long nextInterval(ScheduledFeed feed, ArrayList<HashMap<String, String>> items, boolean changed,
+                              boolean notModified, long hintMillis, long now) {
+        double interval;
+        long postingInterval = postingInterval(items, now);
+        if(postingInterval > 0){
+            // About twice for each post, so new items are usually picked up well before the next
+            interval = postingInterval / 2.0;
+        }
+        else if(feed.pollCount == 1){
+            interval = feed.intervalMillis;
+        }
+        else{
+            interval = feed.intervalMillis * (changed ? SPEED_UP : SLOW_DOWN);
+        }
+
+        // Known to be unchanged, whatever the dates say
+        if(notModified){
+            interval = Math.max(interval, feed.intervalMillis * SLOW_DOWN);
+        }
+
+        interval = Math.max(interval, Math.min(hintMillis, maxIntervalMillis));
+        return Math.max(minIntervalMillis, Math.min(maxIntervalMillis, (long) interval));
+    }
+
+    /**
+     * Works out how often a feed posts from the dates of its newest items. A feed that has
+     * gone quiet for longer than that is taken to post as rarely as it has lately.
+     *
+     * @return the time between posts, or -1 if fewer than two items are dated.
+     */
+    private static long postingInterval(ArrayList<HashMap<String, String>> items, long now) {
+        ArrayList<Long> times = new ArrayList<Long>();
+        for(HashMap<String, String> item : items){
+            long time = FeedBatch.parseDate(FeedBatch.firstValue(item, FeedBatch.DATE_FIELDS));
+            if(time != Long.MIN_VALUE && time <= now){
+                times.add(time);
+            }
+        }
+        if(times.size() < 2){
+            return -1;
+        }
+
+        Long[] sorted = times.toArray(new Long[times.size()]);
+        Arrays.sort(sorted);
+        int count = Math.min(RECENT_ITEMS, sorted.length);
+        long newest = sorted[sorted.length - 1];
+        long oldest = sorted[sorted.length - count];
+
+        long averageGap = (newest - oldest) / (count - 1);
+        return Math.max(averageGap, now - newest);
+    }
+
+    /**
+     * Takes the hint fields out of the results. Items holding hints are copied rather than
+     * changed, so the results passed in are left as they are.
+     *
+     * @param results the results of a poll.
+     * @param items the list to add the items to, without the hints.
+     * @return the shortest interval the feed asks for, or 0 if it doesn't say.
+     */
+    static long readHints(ArrayList<HashMap<String, String>> results, ArrayList<HashMap<String, String>> items) {
+        String[] ttl = new String[1];
+        String[] updatePeriod = new String[1];
+        String[] updateFrequency = new String[1];
+
+        for(HashMap<String, String> item : results){
+            if(hasAny(item, TTL_FIELDS) || hasAny(item, UPDATE_PERIOD_FIELDS) || hasAny(item, UPDATE_FREQUENCY_FIELDS)){
+                item = new HashMap<String, String>(item);
+                removeAll(item, TTL_FIELDS, ttl);
+                removeAll(item, UPDATE_PERIOD_FIELDS, updatePeriod);
+                removeAll(item, UPDATE_FREQUENCY_FIELDS, updateFrequency);
+            }
+            items.add(item);
+        }
+
+        return Math.max(ttlMillis(ttl[0]), updatePeriodMillis(updatePeriod[0], updateFrequency[0]));
+    }
+
+    private static boolean hasAny(HashMap<String, String> item, String[] fields) {
+        for(String field : fields){
+            if(item.containsKey(field)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the fields from the item, keeping the first value found in value[0].
+     */
+    private static void removeAll(HashMap<String, String> item, String[] fields, String[] value) {
+        for(String field : fields){
+            value[0] = firstNonNull(value[0], item.remove(field));
+        }
+    }
+
+    /**
+     * @param ttl value of <ttl>, in minutes.
+     */
+    private static long ttlMillis(String ttl) {
+        if(ttl == null){
+            return 0;
+        }
+        try {
+            return Math.max(0, TimeUnit.MINUTES.toMillis(Long.parseLong(ttl.trim())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param updatePeriod value of <sy:updatePeriod>.
+     * @param updateFrequency value of <sy:updateFrequency>, the number of updates per period.
+     */
+    private static long updatePeriodMillis(String updatePeriod, String updateFrequency) {
+        if(updatePeriod == null){
+            return 0;
+        }
+
+        long period;
+        switch (updatePeriod.trim()){
+            case "hourly":
+                period = TimeUnit.HOURS.toMillis(1);
+                break;
+            case "daily":
+                period = TimeUnit.DAYS.toMillis(1);
+                break;
+            case "weekly":
+                period = TimeUnit.DAYS.toMillis(7);
+                break;
+            case "monthly":
+                period = TimeUnit.DAYS.toMillis(30);
+                break;
+            case "yearly":
+                period = TimeUnit.DAYS.toMillis(365);
+                break;
+            default:
+                return 0;
+        }
+
+        long frequency = 1;
+        if(updateFrequency != null){
+            try {
+                frequency = Math.max(1, Long.parseLong(updateFrequency.trim()));
+            } catch (NumberFormatException e) {
+                // Defaults to once a period
+            }
+        }
+        return period / frequency;
+    }
+
+    private long backedOff(long intervalMillis, int errorCount) {
+        if(errorCount == 0){
+            return intervalMillis;
+        }
+        return Math.min(maxIntervalMillis, intervalMillis << Math.min(errorCount, 16));
+    }
+
+    private long jittered(long intervalMillis) {
+        if(jitter == 0){
+            return intervalMillis;
+        }
+        double offset = jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return (long) (intervalMillis * (1 + offset));
+    }
+
+    /**
+     * @return the fields of the request, or the default tags, followed by the hint fields.
+     */
+    private static String[] withHintFields(String[] fields) {
+        fields = FeedParser.fieldsOrDefault(fields);
+        ArrayList<String> withHints = new ArrayList<String>(Arrays.asList(fields));
+        withHints.addAll(Arrays.asList(TTL_FIELDS));
+        withHints.addAll(Arrays.asList(UPDATE_PERIOD_FIELDS));
+        withHints.addAll(Arrays.asList(UPDATE_FREQUENCY_FIELDS));
+        return withHints.toArray(new String[withHints.size()]);
+    }
+
+    private FeedParser newParser(FeedRequest request) {
+        FeedParser parser = new FeedParser(request.getUrlString());
+        parser.setRecordTag(recordTag);
+        parser.setItemRecordsByDefault(true);
+        parser.setStopCondition(request.getStopCondition());
+        parser.setExecutor(executor);
+        parser.setFeedCache(feedCache);
+        parser.setTransport(transport);
+        parser.setLogger(logger);
+        parser.setMetricsListener(metricsListener);
+        return parser;
+    }
+
+    private synchronized FeedLogger getLoggerOrDefault() {
+        return logger != null ? logger : FeedParser.getDefaultLogger();
+    }
+
+    private static String firstNonNull(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * @return what tells an item apart: its guid, id or link, or else all of it.
+     */
+    static String identityOf(Map<String, String> item) {
+        String identity = FeedBatch.firstValue(item, FeedBatch.IDENTITY_FIELDS);
+        return identity != null ? identity : new TreeMap<String, String>(item).toString();
+    }
+
+
+    /** A feed being polled, ordered by when it is next due **/
+    private static class ScheduledFeed implements Comparable<ScheduledFeed> {
+
+        final FeedRequest request;
+        long intervalMillis;
+        long nextPollTime;
+        int pollCount;
+        int errorCount;
+        int notModifiedCount;
+        boolean removed;
+
+        /** The poll under way, if any **/
+        FetchFuture<?> fetch;
+
+        /** Key the feed is cached under, once it has been polled **/
+        String cacheKey;
+
+        /** Identities of the items found by the last poll **/
+        HashSet<String> seen = new HashSet<String>();
+
+        ScheduledFeed(FeedRequest request, long intervalMillis) {
+            this.request = request;
+            this.intervalMillis = intervalMillis;
+        }
+
+        /**
+         * @return the items that weren't there the last time.
+         */
+        ArrayList<HashMap<String, String>> update(ArrayList<HashMap<String, String>> items) {
+            ArrayList<HashMap<String, String>> newItems = new ArrayList<HashMap<String, String>>();
+            HashSet<String> identities = new HashSet<String>();
+            for(HashMap<String, String> item : items){
+                String identity = identityOf(item);
+                if(identities.add(identity) && !seen.contains(identity)){
+                    newItems.add(item);
+                }
+            }
+
+            seen = identities;
+            pollCount++;
+            return newItems;
+        }
+
+        @Override
+        public int compareTo(ScheduledFeed other) {
+            return Long.compare(nextPollTime, other.nextPollTime);
+        }
+    }
+}
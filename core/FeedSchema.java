@@ -0,0 +1,62 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tags stored in each FeedRecord and the slot each one is kept in. One schema is shared by
+ * every record parsed in a fetch, so the tag names are stored once rather than in every record.
+ */
+public final class FeedSchema {
+
+    private final String[] fields;
+    private final FieldMatcher matcher;
+
+    /**
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               A tag listed more than once gets a single slot.
+     */
+    public FeedSchema(String... fields) {
+        ArrayList<String> unique = new ArrayList<String>(fields.length);
+        for(String field : fields){
+            if(!unique.contains(field)){
+                unique.add(field);
+            }
+        }
+
+        this.fields = unique.toArray(new String[unique.size()]);
+        this.matcher = new FieldMatcher(this.fields);
+    }
+
+    /**
+     * @param field name of a tag.
+     * @return the slot the tag is stored in, or -1 if it isn't part of the schema.
+     */
+    public int indexOf(String field) {
+        return matcher.indexOf(field);
+    }
+
+    /**
+     * @return the number of slots in each record.
+     */
+    public int size() {
+        return fields.length;
+    }
+
+    /**
+     * @param index a slot.
+     * @return the name of the tag stored in the slot.
+     */
+    public String fieldAt(int index) {
+        return fields[index];
+    }
+
+    public List<String> getFields() {
+        return Arrays.asList(fields.clone());
+    }
+
+    FieldMatcher getMatcher() {
+        return matcher;
+    }
+}
@@ -0,0 +1,74 @@
+package com.odie.animehub;
+
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Tells a fetch where to stop reading the feed. Feeds list their newest items first, so when
+ * polling, everything from the first item already seen onwards can be skipped. As soon as the
+ * condition holds for an item, parsing stops and the connection is dropped without downloading
+ * the rest of the feed. The item itself is left out of the results.
+ *
+ * The condition only sees the tags that were asked for, so ask for the ones it looks at.
+ */
+public abstract class FeedStopCondition {
+
+    /**
+     * @param item an item, as parsed.
+     * @return true to stop before this item.
+     */
+    public abstract boolean shouldStop(Map<String, String> item);
+
+    /**
+     * Stops at the first item whose "guid", "id" or "link" (the first of them it has) is one of
+     * the given ones, e.g. the newest item from the last time the feed was read.
+     *
+     * @param ids identities of items already seen.
+     */
+    public static FeedStopCondition atId(String... ids) {
+        final HashSet<String> known = new HashSet<String>();
+        for(String id : ids){
+            if(id != null){
+                known.add(id.trim());
+            }
+        }
+
+        return new FeedStopCondition() {
+            @Override
+            public boolean shouldStop(Map<String, String> item) {
+                String identity = FeedBatch.firstValue(item, FeedBatch.IDENTITY_FIELDS);
+                return identity != null && known.contains(identity);
+            }
+        };
+    }
+
+    /**
+     * Stops at the first item dated at or before the given time, e.g. the date of the newest
+     * item from the last time the feed was read. Items are dated as by FeedBatch.merge(), and
+     * items without a date never stop the fetch.
+     *
+     * @param time milliseconds since the epoch.
+     */
+    public static FeedStopCondition atOrBefore(final long time) {
+        return new FeedStopCondition() {
+            @Override
+            public boolean shouldStop(Map<String, String> item) {
+                long date = FeedBatch.parseDate(FeedBatch.firstValue(item, FeedBatch.DATE_FIELDS));
+                return date != Long.MIN_VALUE && date <= time;
+            }
+        };
+    }
+
+    /**
+     * @param date an RSS (RFC 822) or Atom (RFC 3339) date.
+     * @throws IllegalArgumentException if the date can't be parsed.
+     * @see #atOrBefore(long)
+     */
+    public static FeedStopCondition atOrBefore(String date) {
+        long time = FeedBatch.parseDate(date);
+        if(time == Long.MIN_VALUE){
+            throw new IllegalArgumentException("Unrecognised date: " + date);
+        }
+        return atOrBefore(time);
+    }
+}
@@ -0,0 +1,26 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Receives what a FeedScheduler finds each time it polls a feed. Called on the thread that
+ * finished the fetch.
+ */
+public interface FeedUpdateListener {
+
+    /**
+     * Called when a poll finds items that weren't in the feed the last time it was polled,
+     * which on the first poll is all of them.
+     *
+     * @param request the feed.
+     * @param newItems the items that weren't there before, in feed order.
+     * @param items every item the feed has now.
+     */
+    void onUpdate(FeedRequest request, ArrayList<HashMap<String, String>> newItems, ArrayList<HashMap<String, String>> items);
+
+    /**
+     * Called when a poll fails. The feed is tried again later, backing off while it keeps failing.
+     */
+    void onError(FeedRequest request, Throwable error);
+}
@@ -0,0 +1,217 @@
+package com.odie.animehub;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running XML fetches at a predictable concurrency.
+ *
+ * Every executor made here is bounded: once it has as much work as it is allowed to hold, a new
+ * fetch is rejected rather than spawning more threads or queueing without limit. A rejected
+ * fetch fails its FetchFuture with a RejectedExecutionException, so nothing ever waits to
+ * submit one. newWaitingExecutor() makes the submitting thread wait for room instead, for
+ * callers that would rather be held up than lose a fetch.
+ */
+public final class FetchExecutors {
+
+    public static final int DEFAULT_MAX_THREADS = 8;
+    public static final int DEFAULT_MAX_QUEUED = 256;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor defaultExecutor;
+
+    private FetchExecutors() {
+    }
+
+    /**
+     * Returns the executor shared by every OEXMLParser that has not been given one of its own.
+     * It is created the first time it is needed, with DEFAULT_MAX_THREADS threads and room for
+     * DEFAULT_MAX_QUEUED waiting fetches.
+     */
+    public static synchronized Executor getDefault() {
+        if(defaultExecutor == null){
+            defaultExecutor = newBoundedExecutor(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED);
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Creates a thread pool that runs at most maxThreads fetches at once and holds at most
+     * maxQueued more. When both are full, further fetches are rejected.
+     * Idle threads are let go after a while, so an unused pool costs nothing.
+     *
+     * @param maxThreads maximum number of fetches running at the same time.
+     * @param maxQueued maximum number of fetches waiting to run.
+     */
+    public static ExecutorService newBoundedExecutor(int maxThreads, int maxQueued) {
+        return newPool(maxThreads, maxQueued, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Creates a thread pool like newBoundedExecutor(), except that when both the threads and
+     * the queue are full, the submitting thread waits for a space in the queue instead of the
+     * fetch being rejected. Never submit to it from the UI thread, or from a callback run when
+     * one of its own fetches completes: with the pool full, that thread would wait on itself.
+     *
+     * @param maxThreads maximum number of fetches running at the same time.
+     * @param maxQueued maximum number of fetches waiting to run.
+     */
+    public static ExecutorService newWaitingExecutor(int maxThreads, int maxQueued) {
+        return newPool(maxThreads, maxQueued, new WaitForSpacePolicy());
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread for each fetch, running at most
+     * maxConcurrent fetches at once. Further fetches wait their turn, up to DEFAULT_MAX_QUEUED
+     * of them, and any more are rejected. On JVMs without virtual threads (including Android),
+     * a bounded thread pool with maxConcurrent threads is returned instead.
+     *
+     * @param maxConcurrent maximum number of fetches running at the same time.
+     */
+    public static Executor newVirtualThreadExecutor(int maxConcurrent) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            Executor virtualThreads = (Executor) factory.invoke(null);
+            return new ConcurrencyLimitedExecutor(virtualThreads, maxConcurrent, DEFAULT_MAX_QUEUED);
+        } catch (Exception e) {
+            return newBoundedExecutor(maxConcurrent, DEFAULT_MAX_QUEUED);
+        }
+    }
+
+    /**
+     * @return true if this JVM can run fetches on virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+
+
+    /************************ HELPER METHODS *******************************/
+
+    private static ExecutorService newPool(int maxThreads, int maxQueued, RejectedExecutionHandler whenFull) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueued),
+                new FetchThreadFactory(),
+                whenFull);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    /** Names pool threads and keeps them from holding the JVM open **/
+    private static class FetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "OEXMLParser-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /** Makes the submitting thread wait for room in the queue instead of rejecting the fetch **/
+    private static class WaitForSpacePolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if(executor.isShutdown()){
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+
+            try {
+                executor.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to queue fetch", e);
+            }
+        }
+    }
+
+    /** Lets at most a fixed number of tasks run on the wrapped executor at once, and queues a few more **/
+    private static class ConcurrencyLimitedExecutor implements Executor {
+
+        private final Executor delegate;
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+        private int running;
+
+        ConcurrencyLimitedExecutor(Executor delegate, int maxConcurrent, int maxQueued) {
+            this.delegate = delegate;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if(command == null){
+                throw new NullPointerException();
+            }
+
+            synchronized (this) {
+                if(running >= maxConcurrent){
+                    if(queue.size() >= maxQueued){
+                        throw new RejectedExecutionException("Too many fetches waiting to run");
+                    }
+                    queue.add(command);
+                    return;
+                }
+                running++;
+            }
+            start(command);
+        }
+
+        private void start(final Runnable command) {
+            try {
+                delegate.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            command.run();
+                        } finally {
+                            finished();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                finished();
+                throw e;
+            }
+        }
+
+        /**
+         * Hands the slot of a task that has finished to the next one waiting, if there is one.
+         */
+        private void finished() {
+            Runnable next;
+            synchronized (this) {
+                next = queue.poll();
+                if(next == null){
+                    running--;
+                    return;
+                }
+            }
+            start(next);
+        }
+    }
+}
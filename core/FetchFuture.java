@@ -0,0 +1,246 @@
+package com.odie.animehub;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * The pending result of an XML fetch. Completes with the parsed results, or exceptionally if the
+ * fetch failed. Cancelling it, or letting it time out, aborts the HTTP response so the thread
+ * doing the fetch is freed up straight away.
+ *
+ * @param <T> type of the result.
+ */
+public class FetchFuture<T> extends CompletableFuture<T> {
+
+    private static final String TAG = "FetchFuture";
+
+    private static ScheduledExecutorService timer;
+
+    private volatile HttpTransport.Response response;
+    private volatile CountingInputStream receivedCounter;
+    private volatile CountingInputStream decodedCounter;
+
+    /** Null unless the fetch is reporting metrics **/
+    private volatile Timings timings;
+
+    private volatile FetchMetrics.CacheOutcome cacheOutcome = FetchMetrics.CacheOutcome.NONE;
+
+    /**
+     * Fails the fetch with a TimeoutException if it has not finished within the given time.
+     *
+     * @param timeout how long to wait for the fetch.
+     * @param unit unit of the timeout.
+     * @return this future.
+     */
+    public FetchFuture<T> timeoutAfter(long timeout, TimeUnit unit) {
+        final ScheduledFuture<?> timeoutTask = getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(completeExceptionally(new TimeoutException("XML fetch timed out"))){
+                    abort();
+                }
+            }
+        }, timeout, unit);
+
+        whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable error) {
+                timeoutTask.cancel(false);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * @return the number of bytes of the response body received over the network so far. This
+     * is smaller than getDecodedBytes() when the server compressed the response.
+     */
+    public long getReceivedBytes() {
+        CountingInputStream counter = receivedCounter;
+        return counter != null ? counter.getCount() : 0;
+    }
+
+    /**
+     * @return the number of bytes of the response body handed to the parser so far, after
+     * decompression.
+     */
+    public long getDecodedBytes() {
+        CountingInputStream counter = decodedCounter;
+        return counter != null ? counter.getCount() : 0;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        abort();
+        return cancelled;
+    }
+
+    /**
+     * Called by the fetch once it has a response, so that it can be cut off if the future is
+     * cancelled or times out.
+     */
+    void setResponse(HttpTransport.Response response) {
+        this.response = response;
+
+        // Cancelled while connecting
+        if(isDone()){
+            abort();
+        }
+    }
+
+    /**
+     * Called by the fetch once it starts reading the response, so the bytes read can be counted.
+     */
+    void setByteCounters(CountingInputStream received, CountingInputStream decoded) {
+        this.receivedCounter = received;
+        this.decodedCounter = decoded;
+    }
+
+    /**
+     * Starts timing the fetch, and reports its FetchMetrics to the listener once it completes.
+     * Until this is called, the calls below that record metrics do nothing.
+     */
+    void trackMetrics(final String urlString, final FetchMetricsListener listener) {
+        final Timings current = new Timings();
+        timings = current;
+
+        whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable error) {
+                try {
+                    listener.onFetchComplete(current.toMetrics(urlString, receivedCounter, decodedCounter, cacheOutcome, error));
+                } catch (RuntimeException e) {
+                    FeedParser.getDefaultLogger().error(TAG, "Error reporting metrics for " + urlString, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the fetch is reporting metrics.
+     */
+    boolean isTrackingMetrics() {
+        return timings != null;
+    }
+
+    /**
+     * Called by the fetch once it starts running on the executor.
+     */
+    void markStarted() {
+        Timings current = timings;
+        if(current != null){
+            current.started = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called by the fetch once the status and headers of the response have arrived.
+     */
+    void markResponse(int statusCode) {
+        Timings current = timings;
+        if(current != null){
+            current.responded = System.nanoTime();
+            current.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Called by the fetch once it has finished parsing the body.
+     */
+    void markParsed() {
+        Timings current = timings;
+        if(current != null){
+            current.parsed = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return how the cache answered the fetch, whether or not it is reporting metrics.
+     */
+    FetchMetrics.CacheOutcome getCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    void setCacheOutcome(FetchMetrics.CacheOutcome cacheOutcome) {
+        this.cacheOutcome = cacheOutcome;
+    }
+
+    void setItemCount(int itemCount) {
+        Timings current = timings;
+        if(current != null){
+            current.itemCount = itemCount;
+        }
+    }
+
+    private void abort() {
+        HttpTransport.Response current = response;
+        if(current != null){
+            current.abort();
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if(timer == null){
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                    thread.setName("OEXMLParser-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+
+
+    /** What has been recorded about the fetch so far **/
+    private static class Timings {
+
+        final long created = System.nanoTime();
+        volatile long started;
+        volatile long responded;
+        volatile long parsed;
+        volatile int statusCode;
+        volatile int itemCount;
+
+        FetchMetrics toMetrics(String urlString, CountingInputStream received, CountingInputStream decoded,
+                               FetchMetrics.CacheOutcome cacheOutcome, Throwable error) {
+            long now = System.nanoTime();
+            long started = this.started;
+            long responded = this.responded;
+            long parsed = this.parsed;
+
+            long readNanos = received != null ? received.getReadNanos() : 0;
+            long parseNanos = 0;
+            if(responded != 0 && parsed != 0){
+                parseNanos = Math.max(0, parsed - responded - readNanos);
+            }
+
+            return new FetchMetrics(urlString,
+                    (started != 0 ? started : now) - created,
+                    started != 0 && responded != 0 ? responded - started : 0,
+                    readNanos,
+                    parseNanos,
+                    now - created,
+                    received != null ? received.getCount() : 0,
+                    decoded != null ? decoded.getCount() : 0,
+                    itemCount,
+                    statusCode,
+                    cacheOutcome,
+                    error);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.odie.animehub;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * What happened during one fetch: how long each stage took, how much was read, how many items
+ * came out of it and, if it failed, why. Durations are in nanoseconds, and a stage that didn't
+ * happen (e.g. downloading, when the cache answered) takes 0.
+ *
+ * The body of a feed is parsed as it is downloaded, so the two stages overlap. getReadNanos()
+ * is the time spent waiting on the network for the body, and getParseNanos() the rest of the
+ * time spent on it: decompressing, decoding and parsing.
+ */
+public final class FetchMetrics {
+
+    /** How the cache took part in the fetch **/
+    public enum CacheOutcome {
+        /** No cache was used **/
+        NONE,
+        /** Answered from the cache, or by an identical fetch already under way, without a request of its own **/
+        HIT,
+        /** The server said the cached copy was still current **/
+        NOT_MODIFIED,
+        /** Downloaded and parsed in full **/
+        MISS
+    }
+
+    /** Broad reason a fetch failed **/
+    public enum ErrorCategory {
+        NONE,
+        CANCELLED,
+        /** Timed out, either through FetchFuture.timeoutAfter() or on a socket **/
+        TIMEOUT,
+        /** The server responded with an error status **/
+        HTTP,
+        /** The connection failed or broke off **/
+        NETWORK,
+        /** The response wasn't well-formed XML **/
+        PARSE,
+        OTHER
+    }
+
+    private final String urlString;
+    private final long queueNanos;
+    private final long timeToFirstByteNanos;
+    private final long readNanos;
+    private final long parseNanos;
+    private final long totalNanos;
+    private final long receivedBytes;
+    private final long decodedBytes;
+    private final int itemCount;
+    private final int statusCode;
+    private final CacheOutcome cacheOutcome;
+    private final Throwable error;
+
+    FetchMetrics(String urlString, long queueNanos, long timeToFirstByteNanos, long readNanos, long parseNanos,
+                 long totalNanos, long receivedBytes, long decodedBytes, int itemCount, int statusCode,
+                 CacheOutcome cacheOutcome, Throwable error) {
+        this.urlString = urlString;
+        this.queueNanos = queueNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.readNanos = readNanos;
+        this.parseNanos = parseNanos;
+        this.totalNanos = totalNanos;
+        this.receivedBytes = receivedBytes;
+        this.decodedBytes = decodedBytes;
+        this.itemCount = itemCount;
+        this.statusCode = statusCode;
+        this.cacheOutcome = cacheOutcome;
+        this.error = error;
+    }
+
+    public String getUrlString() {
+        return urlString;
+    }
+
+    /**
+     * @return time spent waiting for the executor to run the fetch.
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * @return time from sending the request to having the status and headers of the response,
+     * including looking up the host and connecting.
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * @return time spent waiting on the network for the body.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return time spent decompressing, decoding and parsing the body.
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return time from starting the fetch to its future completing.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @see FetchFuture#getReceivedBytes()
+     */
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * @see FetchFuture#getDecodedBytes()
+     */
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * @return the number of items the fetch came up with.
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return the HTTP status of the response, or 0 if no request was made or it got no response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public CacheOutcome getCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    /**
+     * @return what the fetch failed with, or null if it succeeded.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public ErrorCategory getErrorCategory() {
+        if(error == null){
+            return ErrorCategory.NONE;
+        }
+
+        Throwable cause = error;
+        while((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null){
+            cause = cause.getCause();
+        }
+
+        if(cause instanceof CancellationException){
+            return ErrorCategory.CANCELLED;
+        }
+        if(cause instanceof TimeoutException || cause instanceof SocketTimeoutException){
+            return ErrorCategory.TIMEOUT;
+        }
+        if(cause instanceof XmlPullParserException){
+            return ErrorCategory.PARSE;
+        }
+        if(cause instanceof IOException){
+            return statusCode >= 400 ? ErrorCategory.HTTP : ErrorCategory.NETWORK;
+        }
+        return ErrorCategory.OTHER;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return urlString + " " + (error == null ? "OK" : getErrorCategory().toString())
+                + " status=" + statusCode + " cache=" + cacheOutcome + " items=" + itemCount
+                + " received=" + receivedBytes + " decoded=" + decodedBytes
+                + " queue=" + millis(queueNanos) + "ms ttfb=" + millis(timeToFirstByteNanos)
+                + "ms read=" + millis(readNanos) + "ms parse=" + millis(parseNanos)
+                + "ms total=" + millis(totalNanos) + "ms";
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(nanos / 1000000);
+    }
+}
@@ -0,0 +1,14 @@
+package com.odie.animehub;
+
+/**
+ * Receives the FetchMetrics of each fetch once it has finished, whether it succeeded, failed,
+ * was cancelled or timed out. Called on whichever thread finished the fetch, so it should be
+ * quick and thread safe, e.g. adding to counters or handing off to a metrics library.
+ */
+public interface FetchMetricsListener {
+
+    /**
+     * @param metrics timings, sizes and outcome of the fetch.
+     */
+    void onFetchComplete(FetchMetrics metrics);
+}
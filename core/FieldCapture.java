@@ -0,0 +1,267 @@
+package com.odie.animehub;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Picks out the values of the requested fields as a parser moves through a document, in the
+ * same single pass, and hands each one to a FieldSink.
+ *
+ * The FieldSelectors of the fields are run as a state machine over the open tags. Each state
+ * knows which fields a tag in it completes and which state each child tag moves to. States are
+ * built the first time they're needed and then reused, so once the shape of a feed has been
+ * seen, each tag costs one hash lookup however many fields are requested, or two when
+ * namespaces are processed and tags are told apart by namespace and name.
+ *
+ * Only text directly inside a tag completing a text field is turned into a String, straight
+ * from the parser's own buffer, so the whitespace between tags and the text of tags nobody
+ * asked for cost nothing.
+ */
+class FieldCapture {
+
+    /** Receives the value of each field as it is found **/
+    interface FieldSink {
+
+        /**
+         * @param index the index of the field in the requested fields.
+         * @param value the text or attribute value, or null if the tag had none.
+         */
+        void onField(int index, String value);
+    }
+
+    private final FieldMatcher matcher;
+    private final FieldSink sink;
+    private final boolean namespaceAware;
+    private final int[] holder = new int[2];
+
+    /** Positions every selector not starting at the root can start from, at any tag **/
+    private final int[] floatingStarts;
+    private final HashMap<List<Integer>, State> states = new HashMap<List<Integer>, State>();
+
+    /** State of the tag open at each depth, and the text read directly inside it **/
+    private State[] stateAtDepth = new State[16];
+    private String[] textAtDepth = new String[16];
+
+    /**
+     * @param myParser the parser the events will come from.
+     * @param matcher the requested fields.
+     * @param sink Receives the value of each field as it is found.
+     * @throws IllegalArgumentException if the parser processes namespaces and a field uses a
+     *         prefix that isn't in FeedNamespaces.
+     */
+    FieldCapture(XmlPullParser myParser, FieldMatcher matcher, FieldSink sink) {
+        this.matcher = matcher;
+        this.sink = sink;
+        this.namespaceAware = myParser.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES);
+
+        ArrayList<Integer> rootStarts = new ArrayList<Integer>();
+        ArrayList<Integer> floating = new ArrayList<Integer>();
+        for(int i = 0; i < matcher.size(); i++){
+            FieldSelector selector = matcher.selectorAt(i);
+            if(selector == null){
+                continue;
+            }
+            if(namespaceAware && selector.hasUnknownPrefix()){
+                throw new IllegalArgumentException("Unknown namespace prefix in field \"" + selector.getField()
+                        + "\", give the namespace in full as {namespace}name");
+            }
+            (selector.isAnchored() ? rootStarts : floating).add(position(i, 0));
+        }
+
+        floatingStarts = new int[floating.size()];
+        for(int i = 0; i < floatingStarts.length; i++){
+            floatingStarts[i] = floating.get(i);
+        }
+        stateAtDepth[0] = stateFor(rootStarts);
+    }
+
+    /**
+     * To be called on every START_TAG event. Hands over the values of the attribute fields
+     * the tag completes.
+     */
+    void startTag(XmlPullParser myParser) {
+        int depth = myParser.getDepth();
+        if(depth >= stateAtDepth.length){
+            grow(depth);
+        }
+
+        State parent = stateAtDepth[depth - 1];
+        String name = myParser.getName();
+        State state;
+        if(namespaceAware){
+            String prefix = myParser.getPrefix();
+            String namespace = myParser.getNamespace();
+            HashMap<String, HashMap<String, State>> byNamespace = prefix == null ? parent.nextUnprefixed : parent.nextPrefixed;
+            HashMap<String, State> byName = byNamespace.get(namespace);
+            if(byName == null){
+                byName = new HashMap<String, State>();
+                byNamespace.put(namespace, byName);
+            }
+
+            state = byName.get(name);
+            if(state == null){
+                state = next(parent, prefix, namespace, name);
+                byName.put(name, state);
+            }
+        }
+        else{
+            state = parent.next.get(name);
+            if(state == null){
+                state = next(parent, null, "", name);
+                parent.next.put(name, state);
+            }
+        }
+
+        stateAtDepth[depth] = state;
+        textAtDepth[depth] = null;
+
+        for(int i = 0; i < state.attributeFields.length; i++){
+            sink.onField(state.attributeFields[i], myParser.getAttributeValue(state.attributeNamespaces[i], state.attributeNames[i]));
+        }
+    }
+
+    /**
+     * To be called on every TEXT event. Keeps the text if it is directly inside a tag that
+     * completes a text field and isn't only whitespace.
+     */
+    void text(XmlPullParser myParser) throws XmlPullParserException {
+        int depth = myParser.getDepth();
+        if(depth == 0 || depth >= stateAtDepth.length || stateAtDepth[depth].textFields.length == 0){
+            return;
+        }
+        if(myParser.isWhitespace()){
+            return;
+        }
+
+        char[] characters = myParser.getTextCharacters(holder);
+        textAtDepth[depth] = new String(characters, holder[0], holder[1]);
+    }
+
+    /**
+     * To be called on every END_TAG event. Hands over the text of the text fields the tag
+     * completes.
+     */
+    void endTag(XmlPullParser myParser) {
+        int depth = myParser.getDepth();
+        State state = stateAtDepth[depth];
+        for(int i = 0; i < state.textFields.length; i++){
+            sink.onField(state.textFields[i], textAtDepth[depth]);
+        }
+        textAtDepth[depth] = null;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * Works out the state a child tag of the given state moves to.
+     */
+    private State next(State parent, String prefix, String namespace, String name) {
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+        advance(parent.positions, prefix, namespace, name, positions);
+        advance(floatingStarts, prefix, namespace, name, positions);
+        return stateFor(positions);
+    }
+
+    private void advance(int[] from, String prefix, String namespace, String name, ArrayList<Integer> into) {
+        for(int position : from){
+            int field = fieldOf(position);
+            int step = stepOf(position);
+            FieldSelector selector = matcher.selectorAt(field);
+            if(step < selector.length() && selector.matches(step, namespaceAware, prefix, namespace, name)){
+                into.add(position(field, step + 1));
+            }
+        }
+    }
+
+    /**
+     * @param positions how far along its path each selector is.
+     * @return the one state for those positions.
+     */
+    private State stateFor(List<Integer> positions) {
+        List<Integer> key = new ArrayList<Integer>(new TreeSet<Integer>(positions));
+        State state = states.get(key);
+        if(state == null){
+            state = new State(key);
+            states.put(key, state);
+        }
+        return state;
+    }
+
+    private void grow(int depth) {
+        int length = Math.max(depth + 1, stateAtDepth.length * 2);
+
+        State[] grownStates = new State[length];
+        System.arraycopy(stateAtDepth, 0, grownStates, 0, stateAtDepth.length);
+        stateAtDepth = grownStates;
+
+        String[] grownText = new String[length];
+        System.arraycopy(textAtDepth, 0, grownText, 0, textAtDepth.length);
+        textAtDepth = grownText;
+    }
+
+    /** A position is a field and how many tags of its path have been matched **/
+    private static int position(int field, int step) {
+        return (field << 16) | step;
+    }
+
+    private static int fieldOf(int position) {
+        return position >>> 16;
+    }
+
+    private static int stepOf(int position) {
+        return position & 0xFFFF;
+    }
+
+
+    /** A set of positions, and what a tag in it completes **/
+    private class State {
+
+        final int[] positions;
+        final int[] textFields;
+        final int[] attributeFields;
+        final String[] attributeNamespaces;
+        final String[] attributeNames;
+        final HashMap<String, State> next = new HashMap<String, State>();
+
+        /** Used instead of next when namespaces are processed, by namespace then name **/
+        final HashMap<String, HashMap<String, State>> nextUnprefixed = new HashMap<String, HashMap<String, State>>();
+        final HashMap<String, HashMap<String, State>> nextPrefixed = new HashMap<String, HashMap<String, State>>();
+
+        State(List<Integer> positions) {
+            this.positions = new int[positions.size()];
+
+            ArrayList<Integer> text = new ArrayList<Integer>();
+            ArrayList<Integer> attributes = new ArrayList<Integer>();
+            for(int i = 0; i < positions.size(); i++){
+                int position = positions.get(i);
+                this.positions[i] = position;
+
+                FieldSelector selector = matcher.selectorAt(fieldOf(position));
+                if(stepOf(position) == selector.length()){
+                    (selector.isAttribute() ? attributes : text).add(fieldOf(position));
+                }
+            }
+
+            textFields = new int[text.size()];
+            for(int i = 0; i < textFields.length; i++){
+                textFields[i] = text.get(i);
+            }
+
+            attributeFields = new int[attributes.size()];
+            attributeNamespaces = new String[attributes.size()];
+            attributeNames = new String[attributes.size()];
+            for(int i = 0; i < attributeFields.length; i++){
+                FieldSelector selector = matcher.selectorAt(attributes.get(i));
+                attributeFields[i] = attributes.get(i);
+                attributeNamespaces[i] = selector.getAttributeNamespace(namespaceAware);
+                attributeNames[i] = selector.getAttributeName(namespaceAware);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.odie.animehub;
+
+import java.util.HashMap;
+
+/**
+ * Maps the fields requested by the caller to the index of their column, and holds each of them
+ * parsed as a FieldSelector for FieldCapture to match against the document.
+ */
+class FieldMatcher {
+
+    private final String[] fields;
+    private final FieldSelector[] selectors;
+    private final HashMap<String, Integer> indexes;
+
+    /**
+     * @param fields An array of strings with each string representing an XML tag to be parsed.
+     *               If a tag is listed more than once, only the first one is matched.
+     * @throws IllegalArgumentException if a field isn't a valid selector.
+     */
+    FieldMatcher(String... fields) {
+        this.fields = fields;
+        this.selectors = new FieldSelector[fields.length];
+        this.indexes = new HashMap<String, Integer>(fields.length * 2);
+
+        for(int i = fields.length - 1; i >= 0; i--){
+            selectors[i] = FieldSelector.parse(fields[i]);
+            indexes.put(fields[i], i);
+        }
+    }
+
+    /**
+     * @param name a requested field, or the name of an XML tag as returned by XmlPullParser.getName().
+     * @return the index of the field in the requested fields, or -1 if it was not requested.
+     */
+    int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    int size() {
+        return fields.length;
+    }
+
+    String fieldAt(int index) {
+        return fields[index];
+    }
+
+    /**
+     * @return the selector of the field at the index, or null if the same field is listed
+     *         earlier and this one is never matched.
+     */
+    FieldSelector selectorAt(int index) {
+        return indexOf(fields[index]) == index ? selectors[index] : null;
+    }
+}
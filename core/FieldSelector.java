@@ -0,0 +1,236 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+
+/**
+ * A requested field, parsed. Besides a bare tag name, a field can be a path of tags separated
+ * by "/", each tag the direct child of the one before it, and can end with "@attribute" to take
+ * the value of an attribute of the last tag instead of its text. "*" matches any tag. A path is
+ * matched against the innermost tags, unless it starts with "/", in which case it has to start
+ * at the root of the document.
+ *
+ *   title                      any <title>
+ *   item/title                 a <title> directly inside an <item>, but not the channel's
+ *   /rss/channel/title         only the channel's <title>
+ *   enclosure@url              the url attribute of any <enclosure>
+ *   media:thumbnail@url        works the same for prefixed tags
+ *   entry/link@href            the href of an Atom link
+ *   item/*@url                 the url attribute of any tag directly inside an <item>
+ *
+ * In namespace-aware mode, a prefixed name is matched by the namespace its prefix stands for
+ * in FeedNamespaces rather than by the prefix itself, and a namespace can also be given in full
+ * as "{namespace}name". A name without a prefix only matches tags without one, as it does
+ * when namespaces aren't processed.
+ *
+ *   {http://search.yahoo.com/mrss/}thumbnail@url
+ *   item/dc:creator            any prefix bound to the Dublin Core namespace
+ */
+class FieldSelector {
+
+    static final String ANY_TAG = "*";
+
+    private final String field;
+    private final Name[] steps;
+    private final boolean anchored;
+    private final Name attribute;
+
+    private FieldSelector(String field, Name[] steps, boolean anchored, Name attribute) {
+        this.field = field;
+        this.steps = steps;
+        this.anchored = anchored;
+        this.attribute = attribute;
+    }
+
+    /**
+     * @param field a requested field, as described above.
+     * @throws IllegalArgumentException if the field isn't a valid selector.
+     */
+    static FieldSelector parse(String field) {
+        if(field == null){
+            throw new IllegalArgumentException("Field can't be null");
+        }
+
+        // Split on the "/" and "@" that aren't inside a {namespace}
+        ArrayList<String> parts = new ArrayList<String>();
+        String attribute = null;
+        int start = 0;
+        boolean inNamespace = false;
+        for(int i = 0; i <= field.length(); i++){
+            char c = i < field.length() ? field.charAt(i) : '/';
+            if(c == '{' && !inNamespace){
+                inNamespace = true;
+            }
+            else if(c == '}' && inNamespace){
+                inNamespace = false;
+            }
+            else if(!inNamespace && attribute == null && (c == '/' || c == '@')){
+                parts.add(field.substring(start, i));
+                start = i + 1;
+                if(c == '@'){
+                    attribute = "";
+                }
+            }
+        }
+        if(inNamespace){
+            throw new IllegalArgumentException("Unclosed namespace in field \"" + field + "\"");
+        }
+        if(attribute != null){
+            attribute = field.substring(start);
+        }
+
+        boolean anchored = !parts.isEmpty() && parts.get(0).isEmpty() && parts.size() > 1;
+        if(anchored){
+            parts.remove(0);
+        }
+
+        Name[] steps = new Name[parts.size()];
+        for(int i = 0; i < steps.length; i++){
+            steps[i] = Name.parse(parts.get(i), field);
+        }
+
+        return new FieldSelector(field, steps, anchored, attribute != null ? Name.parse(attribute, field) : null);
+    }
+
+    String getField() {
+        return field;
+    }
+
+    /**
+     * @return the number of tags in the path.
+     */
+    int length() {
+        return steps.length;
+    }
+
+    /**
+     * @param step position in the path.
+     * @param namespaceAware whether the parser processes namespaces.
+     * @param prefix prefix of the tag, as returned by XmlPullParser.getPrefix().
+     * @param namespace namespace of the tag, as returned by XmlPullParser.getNamespace().
+     * @param name name of the tag, as returned by XmlPullParser.getName().
+     * @return true if the tag matches the path at that position.
+     */
+    boolean matches(int step, boolean namespaceAware, String prefix, String namespace, String name) {
+        return steps[step].matches(namespaceAware, prefix, namespace, name);
+    }
+
+    boolean isAnchored() {
+        return anchored;
+    }
+
+    /**
+     * @param recordTag tag enclosing each record, or null for <item> and <entry>.
+     * @return true if the field can be matched without knowing the tags around the record: a
+     *         single tag, or a path starting at the record tag.
+     */
+    boolean isWithinRecord(String recordTag) {
+        if(anchored){
+            return false;
+        }
+        return steps.length == 1 || FeedParser.isRecordTag(steps[0].raw, recordTag);
+    }
+
+    /**
+     * @return true if a tag named by its prefix isn't in FeedNamespaces, so the field can't be
+     *         matched in namespace-aware mode.
+     */
+    boolean hasUnknownPrefix() {
+        for(Name step : steps){
+            if(step.isUnknownPrefix()){
+                return true;
+            }
+        }
+        return attribute != null && attribute.isUnknownPrefix();
+    }
+
+    /**
+     * @return true to take the value of an attribute of the tag rather than its text.
+     */
+    boolean isAttribute() {
+        return attribute != null;
+    }
+
+    /**
+     * @param namespaceAware whether the parser processes namespaces.
+     * @return the namespace to pass to XmlPullParser.getAttributeValue().
+     */
+    String getAttributeNamespace(boolean namespaceAware) {
+        if(!namespaceAware){
+            return null;
+        }
+        return attribute.namespace != null ? attribute.namespace : "";
+    }
+
+    /**
+     * @param namespaceAware whether the parser processes namespaces.
+     * @return the name to pass to XmlPullParser.getAttributeValue().
+     */
+    String getAttributeName(boolean namespaceAware) {
+        return namespaceAware ? attribute.local : attribute.raw;
+    }
+
+
+    /** A tag or attribute name in a field **/
+    private static class Name {
+
+        /** The name as written, which is what's matched when namespaces aren't processed **/
+        final String raw;
+        final String prefix;
+        final String local;
+        final String namespace;
+
+        Name(String raw, String prefix, String local, String namespace) {
+            this.raw = raw;
+            this.prefix = prefix;
+            this.local = local;
+            this.namespace = namespace;
+        }
+
+        static Name parse(String name, String field) {
+            if(name.isEmpty()){
+                throw new IllegalArgumentException("Invalid path in field \"" + field + "\"");
+            }
+
+            if(name.startsWith("{")){
+                int end = name.indexOf('}');
+                String local = name.substring(end + 1);
+                if(end == 1 || local.isEmpty() || local.indexOf('{') != -1 || local.indexOf(':') != -1
+                        || local.indexOf('@') != -1 || local.indexOf('/') != -1){
+                    throw new IllegalArgumentException("Invalid namespace in field \"" + field + "\"");
+                }
+                return new Name(name, null, local, name.substring(1, end));
+            }
+            if(name.indexOf('{') != -1 || name.indexOf('}') != -1){
+                throw new IllegalArgumentException("Invalid namespace in field \"" + field + "\"");
+            }
+            if(name.indexOf('@') != -1 || name.indexOf('/') != -1){
+                throw new IllegalArgumentException("Invalid attribute in field \"" + field + "\"");
+            }
+
+            int colon = name.indexOf(':');
+            if(colon > 0 && colon < name.length() - 1){
+                String prefix = name.substring(0, colon);
+                return new Name(name, prefix, name.substring(colon + 1), FeedNamespaces.forPrefix(prefix));
+            }
+            return new Name(name, null, name, null);
+        }
+
+        boolean isUnknownPrefix() {
+            return prefix != null && namespace == null;
+        }
+
+        boolean matches(boolean namespaceAware, String tagPrefix, String tagNamespace, String tagName) {
+            if(raw.equals(ANY_TAG)){
+                return true;
+            }
+            if(!namespaceAware){
+                // A {namespace} can't be matched without namespaces
+                return raw.equals(tagName) && (namespace == null || prefix != null);
+            }
+            if(namespace != null){
+                return local.equals(tagName) && namespace.equals(tagNamespace);
+            }
+            return tagPrefix == null && local.equals(tagName);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.odie.animehub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Carries out the HTTP requests made by OEXMLParser. URLConnectionTransport is used unless the
+ * parser is given another one, e.g. a StubHttpTransport in tests.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a GET request and waits for the response headers.
+     *
+     * @param urlString URL to request.
+     * @param headers request headers to send.
+     * @return the response, which must be closed or aborted once finished with.
+     */
+    Response get(String urlString, Map<String, String> headers) throws IOException;
+
+
+    /** Response to a request made through an HttpTransport **/
+    interface Response {
+
+        int getStatusCode() throws IOException;
+
+        /**
+         * @return the value of the response header, or null if it wasn't sent.
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the body of the response, exactly as it was sent.
+         * @throws IOException if the server responded with an error status.
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Finishes with the response, leaving the connection open for the next request to the
+         * same host if possible.
+         */
+        void close();
+
+        /**
+         * Drops the connection straight away, e.g. when a fetch is cancelled. Can be called from
+         * any thread, including while another thread is reading the body.
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,120 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fingerprints of the items a feed had the last time it was fetched, for delta mode (see
+ * FeedParser.setDeltaMode()). A fingerprint is a 64 bit hash of every tag and value of an item,
+ * its guid or link included, so an item whose fingerprint wasn't seen last time is either new
+ * or has changed.
+ */
+class ItemFingerprints {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL_HASH = 0x9e3779b97f4a7c15L;
+
+    private LongHashSet seen = new LongHashSet(0);
+
+    /**
+     * @param items every item the feed has now.
+     * @return the items that are new or changed since last time, which then becomes now.
+     */
+    ArrayList<HashMap<String, String>> changedItems(List<HashMap<String, String>> items) {
+        Delta delta = newDelta(items.size());
+        ArrayList<HashMap<String, String>> changed = new ArrayList<HashMap<String, String>>();
+        for(HashMap<String, String> item : items){
+            if(delta.add(item)){
+                changed.add(item);
+            }
+        }
+        delta.commit();
+        return changed;
+    }
+
+    /**
+     * Starts going through the items of a fetch one at a time.
+     *
+     * @param expectedSize number of items expected, or 0 for as many as last time.
+     */
+    synchronized Delta newDelta(int expectedSize) {
+        return new Delta(seen, expectedSize);
+    }
+
+    /**
+     * Forgets every item, so they all count as new next time.
+     */
+    synchronized void clear() {
+        seen = new LongHashSet(0);
+    }
+
+    private synchronized void replace(LongHashSet fingerprints) {
+        seen = fingerprints;
+    }
+
+    static long fingerprint(Map<String, String> item) {
+        // Summed, so the order the tags come out of the map in doesn't matter
+        long fingerprint = 0;
+        for(Map.Entry<String, String> entry : item.entrySet()){
+            fingerprint += mix(hash(entry.getKey()) * 31 + mix(hash(entry.getValue())));
+        }
+        return fingerprint;
+    }
+
+    /** 64 bit FNV-1a **/
+    private static long hash(String value) {
+        if(value == null){
+            return NULL_HASH;
+        }
+
+        long hash = FNV_OFFSET_BASIS;
+        for(int i = 0; i < value.length(); i++){
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** Finalizer of MurmurHash3, so that every bit of the input affects every bit of the output **/
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    /** The items of one fetch, compared against the last one as they come **/
+    class Delta {
+
+        private final LongHashSet previous;
+        private final LongHashSet current;
+
+        Delta(LongHashSet previous, int expectedSize) {
+            this.previous = previous;
+            this.current = new LongHashSet(Math.max(expectedSize, previous.size()));
+        }
+
+        /**
+         * @return true if the item is new or has changed.
+         */
+        boolean add(Map<String, String> item) {
+            long fingerprint = fingerprint(item);
+            current.add(fingerprint);
+            return !previous.contains(fingerprint);
+        }
+
+        /**
+         * Makes these the items to compare the next fetch against. Not called if the fetch
+         * fails, so nothing is lost.
+         */
+        void commit() {
+            replace(current);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.odie.animehub;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * FeedLogger that logs through java.util.logging, using the tag as the logger name.
+ */
+public class JavaUtilLogger implements FeedLogger {
+
+    @Override
+    public void debug(String tag, String message) {
+        Logger.getLogger(tag).log(Level.FINE, message);
+    }
+
+    @Override
+    public void error(String tag, String message, Throwable error) {
+        Logger.getLogger(tag).log(Level.SEVERE, message, error);
+    }
+}
@@ -0,0 +1,97 @@
+package com.odie.animehub;
+
+/**
+ * A set of longs kept in a plain array, open addressed, rather than as boxed Longs in a
+ * HashSet, so a set of a few thousand fingerprints is a single array of a few tens of KB.
+ */
+class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private boolean hasZero;
+    private int size;
+
+    /**
+     * @param expectedSize number of values the set is expected to hold.
+     */
+    LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity * 3 / 4 < expectedSize){
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+    }
+
+    /**
+     * @return true if the value wasn't already in the set.
+     */
+    boolean add(long value) {
+        if(value == 0){
+            if(hasZero){
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int mask = table.length - 1;
+        int slot = slot(value, mask);
+        while(table[slot] != 0){
+            if(table[slot] == value){
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = value;
+        size++;
+        if(size > table.length * 3 / 4){
+            grow();
+        }
+        return true;
+    }
+
+    boolean contains(long value) {
+        if(value == 0){
+            return hasZero;
+        }
+
+        int mask = table.length - 1;
+        int slot = slot(value, mask);
+        while(table[slot] != 0){
+            if(table[slot] == value){
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for(long value : old){
+            if(value != 0){
+                int slot = slot(value, mask);
+                while(table[slot] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private static int slot(long value, int mask) {
+        return (int) (value ^ (value >>> 32)) & mask;
+    }
+}
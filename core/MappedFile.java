@@ -0,0 +1,134 @@
+package com.odie.animehub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped into memory for reading, however large. A single mapping can't be larger than
+ * 2 GB, so the file is mapped in segments and read through absolute positions, which is safe
+ * from any number of threads at once.
+ */
+class MappedFile {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    /**
+     * Maps the whole file. The mapping stays valid after this returns, without keeping the
+     * file open.
+     */
+    MappedFile(File file) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = access.getChannel();
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+            for(int i = 0; i < segments.length; i++){
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        } finally {
+            access.close();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the byte at the position, or -1 past the end of the file.
+     */
+    int get(long position) {
+        if(position >= size){
+            return -1;
+        }
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK)) & 0xFF;
+    }
+
+    /**
+     * @return the position of the first b at or after from, or -1 if there isn't one.
+     */
+    long indexOf(int b, long from) {
+        byte value = (byte) b;
+        long position = from;
+        while(position < size){
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int limit = segment.limit();
+            for(int i = (int) (position & SEGMENT_MASK); i < limit; i++){
+                if(segment.get(i) == value){
+                    return (position & ~SEGMENT_MASK) + i;
+                }
+            }
+            position = (position & ~SEGMENT_MASK) + SEGMENT_SIZE;
+        }
+        return -1;
+    }
+
+    /**
+     * @return a stream of the bytes from start up to, but not including, end.
+     */
+    InputStream openStream(long start, long end) {
+        return new RangeInputStream(start, end);
+    }
+
+
+    /** Reads part of the file, through a view of its own so it doesn't disturb other readers **/
+    private class RangeInputStream extends InputStream {
+
+        private long position;
+        private final long end;
+        private ByteBuffer segment;
+        private int segmentIndex = -1;
+
+        RangeInputStream(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(position >= end){
+                return -1;
+            }
+            return get(position++);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if(length == 0){
+                return 0;
+            }
+            if(position >= end){
+                return -1;
+            }
+
+            int index = (int) (position >>> SEGMENT_BITS);
+            if(index != segmentIndex){
+                segment = segments[index].duplicate();
+                segmentIndex = index;
+            }
+
+            int inSegment = (int) (position & SEGMENT_MASK);
+            int count = (int) Math.min(length, Math.min(end - position, segment.limit() - inSegment));
+            segment.position(inSegment);
+            segment.get(buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.odie.animehub;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.Reader;
+
+/**
+ * Hands out XmlPullParsers without paying for a new factory and parser on every fetch.
+ * XmlPullParserFactory.newInstance() looks the implementation up through the class loader, so
+ * the default factory is made once and shared. Parsers made by it are kept one per thread and
+ * reset with setInput() for the next document.
+ *
+ * A parser is taken with obtain() and must be given back with recycle() once finished with.
+ * If a thread asks for another before giving its parser back (e.g. from a listener called in
+ * the middle of a parse), it gets a new one.
+ */
+class PullParsers {
+
+    private static volatile XmlPullParserFactory defaultFactory;
+
+    /** The parser each thread has finished with, if any **/
+    private static final ThreadLocal<XmlPullParser> idleParser = new ThreadLocal<XmlPullParser>();
+
+    private PullParsers() {
+    }
+
+    /**
+     * @return the shared factory, made the first time it is needed.
+     */
+    static XmlPullParserFactory getDefaultFactory() throws XmlPullParserException {
+        XmlPullParserFactory factory = defaultFactory;
+        if(factory == null){
+            synchronized (PullParsers.class) {
+                factory = defaultFactory;
+                if(factory == null){
+                    factory = XmlPullParserFactory.newInstance();
+                    defaultFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Gets a parser ready to read the input.
+     *
+     * @param factory factory to make the parser with, or null for the shared default one. Only
+     *                parsers made by the default factory are reused.
+     * @param input the XML to parse.
+     * @param namespaceAware whether the parser is to process namespaces.
+     */
+    static XmlPullParser obtain(XmlPullParserFactory factory, Reader input, boolean namespaceAware)
+            throws XmlPullParserException {
+        XmlPullParser myParser = null;
+        if(factory == null){
+            myParser = idleParser.get();
+            idleParser.remove();
+        }
+        if(myParser == null){
+            myParser = (factory != null ? factory : getDefaultFactory()).newPullParser();
+        }
+
+        myParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaceAware);
+        myParser.setInput(input);
+        return myParser;
+    }
+
+    /**
+     * Gives a parser back once finished with, so the thread can use it for its next document.
+     *
+     * @param factory the factory that was passed to obtain().
+     * @param myParser the parser, or null.
+     */
+    static void recycle(XmlPullParserFactory factory, XmlPullParser myParser) {
+        if(factory != null || myParser == null){
+            return;
+        }
+
+        try {
+            // Let go of the reader
+            myParser.setInput(null);
+        } catch (XmlPullParserException e) {
+            return;
+        }
+        idleParser.set(myParser);
+    }
+}
@@ -0,0 +1,249 @@
+package com.odie.animehub;
+
+import java.nio.charset.Charset;
+
+/**
+ * Finds where the records of a mapped XML file start and end, so the file can be cut into
+ * chunks of whole records that can each be parsed on their own.
+ *
+ * This is a scan of the raw bytes rather than a parse: it only looks at what's inside '<' and
+ * '>', skipping comments, CDATA sections, processing instructions and declarations so a record
+ * tag mentioned in one of them isn't mistaken for a real one. The tags it looks for are ASCII,
+ * so it can't be fooled by the bytes of a multi-byte UTF-8 character either. Being so much
+ * less work than parsing, it can run ahead of the threads parsing the chunks it finds.
+ */
+class RecordSplitter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Receives each chunk as soon as it is found **/
+    interface ChunkSink {
+
+        /**
+         * @param start position of the '<' of the chunk's first record.
+         * @param end position just past the '>' that ends its last record.
+         */
+        void onChunk(long start, long end);
+    }
+
+    private final MappedFile file;
+    private final byte[][] recordNames;
+
+    /**
+     * @param file the file to split.
+     * @param recordTag tag enclosing each record, or null for <item> (RSS) and <entry> (Atom).
+     */
+    RecordSplitter(MappedFile file, String recordTag) {
+        this.file = file;
+        if(recordTag != null){
+            recordNames = new byte[][]{recordTag.getBytes(UTF_8)};
+        }
+        else{
+            recordNames = new byte[][]{"item".getBytes(UTF_8), "entry".getBytes(UTF_8)};
+        }
+    }
+
+    /**
+     * Goes through the file, handing over chunks of whole records of about chunkSize bytes each.
+     * Whatever is between records (e.g. the channel's own tags) is left out of the chunks.
+     *
+     * @param chunkSize size past which a chunk is handed over at the end of the next record.
+     * @param sink Receives the chunks, in document order.
+     * @return true if the file ended cleanly, false if it ended inside a record, tag, comment or
+     *         the like, in which case the chunks can't be trusted.
+     */
+    boolean split(long chunkSize, ChunkSink sink) {
+        long position = 0;
+        int depth = 0;
+        long chunkStart = -1;
+        long recordEnd = -1;
+
+        while((position = indexOf('<', position)) != -1){
+            int next = file.get(position + 1);
+
+            if(next == '!'){
+                if(startsWith(position, "<!--")){
+                    position = skipPast(position + 4, "-->");
+                }
+                else if(startsWith(position, "<![CDATA[")){
+                    position = skipPast(position + 9, "]]>");
+                }
+                else{
+                    position = skipDeclaration(position + 2);
+                }
+            }
+            else if(next == '?'){
+                position = skipPast(position + 2, "?>");
+            }
+            else if(next == '/'){
+                long nameEnd = nameEnd(position + 2);
+                boolean record = isRecordName(position + 2, nameEnd);
+                position = skipPast(nameEnd, ">");
+
+                if(record && depth > 0 && --depth == 0){
+                    recordEnd = position;
+                }
+            }
+            else{
+                long nameEnd = nameEnd(position + 1);
+                boolean record = isRecordName(position + 1, nameEnd);
+                long tagEnd = skipTag(nameEnd);
+                boolean selfClosing = tagEnd != -1 && file.get(tagEnd - 2) == '/';
+
+                if(record && depth == 0){
+                    if(chunkStart != -1 && position - chunkStart >= chunkSize){
+                        sink.onChunk(chunkStart, recordEnd);
+                        chunkStart = -1;
+                    }
+                    if(chunkStart == -1){
+                        chunkStart = position;
+                    }
+
+                    if(selfClosing){
+                        recordEnd = tagEnd;
+                    }
+                    else{
+                        depth = 1;
+                    }
+                }
+                else if(record && !selfClosing){
+                    depth++;
+                }
+                position = tagEnd;
+            }
+
+            if(position == -1){
+                // Ran off the end inside something
+                return false;
+            }
+        }
+
+        if(depth != 0){
+            return false;
+        }
+        if(chunkStart != -1){
+            sink.onChunk(chunkStart, recordEnd);
+        }
+        return true;
+    }
+
+
+    /************************ HELPER METHODS *******************************/
+
+    /**
+     * @return the position of the first c at or after from, or -1 if there isn't one.
+     */
+    private long indexOf(int c, long from) {
+        return file.indexOf(c, from);
+    }
+
+    private boolean startsWith(long position, String prefix) {
+        for(int i = 0; i < prefix.length(); i++){
+            if(file.get(position + i) != prefix.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position just past the first end at or after from, or -1 if there isn't one.
+     */
+    private long skipPast(long from, String end) {
+        long position = from;
+        while((position = indexOf(end.charAt(0), position)) != -1){
+            if(startsWith(position, end)){
+                return position + end.length();
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Skips a declaration such as <!DOCTYPE ...>, including any internal subset in brackets.
+     *
+     * @return the position just past its '>', or -1 if there isn't one.
+     */
+    private long skipDeclaration(long from) {
+        long size = file.size();
+        int brackets = 0;
+        int quote = 0;
+        for(long i = from; i < size; i++){
+            int c = file.get(i);
+            if(quote != 0){
+                if(c == quote){
+                    quote = 0;
+                }
+            }
+            else if(c == '"' || c == '\''){
+                quote = c;
+            }
+            else if(c == '['){
+                brackets++;
+            }
+            else if(c == ']'){
+                brackets--;
+            }
+            else if(c == '>' && brackets <= 0){
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the attributes of a start tag, which may have a '>' in their quoted values.
+     *
+     * @return the position just past the tag's '>', or -1 if there isn't one.
+     */
+    private long skipTag(long from) {
+        long size = file.size();
+        int quote = 0;
+        for(long i = from; i < size; i++){
+            int c = file.get(i);
+            if(quote != 0){
+                if(c == quote){
+                    quote = 0;
+                }
+            }
+            else if(c == '"' || c == '\''){
+                quote = c;
+            }
+            else if(c == '>'){
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position just past the tag name starting at from.
+     */
+    private long nameEnd(long from) {
+        long position = from;
+        int c;
+        while((c = file.get(position)) != -1 && c != '>' && c != '/' && c != ' ' && c != '\t' && c != '\n' && c != '\r'){
+            position++;
+        }
+        return position;
+    }
+
+    private boolean isRecordName(long start, long end) {
+        for(byte[] name : recordNames){
+            if(end - start == name.length && matches(start, name)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(long start, byte[] name) {
+        for(int i = 0; i < name.length; i++){
+            if(file.get(start + i) != (name[i] & 0xFF)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
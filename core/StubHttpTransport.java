@@ -0,0 +1,125 @@
+package com.odie.animehub;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpTransport that answers requests with canned responses instead of going to the network,
+ * for testing code that uses OEXMLParser. Requests made through it are recorded so they can be
+ * checked afterwards.
+ */
+public class StubHttpTransport implements HttpTransport {
+
+    private final HashMap<String, StubResponse> responses = new HashMap<String, StubResponse>();
+    private final ArrayList<String> requestedURLs = new ArrayList<String>();
+    private final ArrayList<Map<String, String>> requestHeaders = new ArrayList<Map<String, String>>();
+
+    /**
+     * Answers requests for the URL with a 200 response carrying the given XML.
+     */
+    public synchronized void addResponse(String urlString, String xml) {
+        addResponse(urlString, 200, new HashMap<String, String>(), xml);
+    }
+
+    /**
+     * Answers requests for the URL with the given response.
+     *
+     * @param status HTTP status code.
+     * @param headers response headers.
+     * @param body response body, or null for none.
+     */
+    public synchronized void addResponse(String urlString, int status, Map<String, String> headers, String body) {
+        try {
+            byte[] bytes = body != null ? body.getBytes("UTF-8") : new byte[0];
+            addResponse(urlString, status, headers, bytes);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Answers requests for the URL with the given response, e.g. a compressed body.
+     */
+    public synchronized void addResponse(String urlString, int status, Map<String, String> headers, byte[] body) {
+        responses.put(urlString, new StubResponse(status, new HashMap<String, String>(headers), body));
+    }
+
+    /**
+     * @return the URLs requested so far, in order.
+     */
+    public synchronized List<String> getRequestedURLs() {
+        return new ArrayList<String>(requestedURLs);
+    }
+
+    /**
+     * @return the headers sent with each request so far, in order.
+     */
+    public synchronized List<Map<String, String>> getRequestHeaders() {
+        return new ArrayList<Map<String, String>>(requestHeaders);
+    }
+
+    @Override
+    public synchronized Response get(String urlString, Map<String, String> headers) throws IOException {
+        requestedURLs.add(urlString);
+        requestHeaders.add(new HashMap<String, String>(headers));
+
+        StubResponse response = responses.get(urlString);
+        if(response == null){
+            throw new FileNotFoundException(urlString);
+        }
+        return new StubResponse(response.status, response.headers, response.body);
+    }
+
+
+    /** A canned response **/
+    private static class StubResponse implements Response {
+
+        private final int status;
+        private final HashMap<String, String> headers;
+        private final byte[] body;
+
+        StubResponse(int status, HashMap<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            for(Map.Entry<String, String> header : headers.entrySet()){
+                if(header.getKey().equalsIgnoreCase(name)){
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if(status >= 400){
+                throw new IOException("Server returned HTTP response code: " + status);
+            }
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.odie.animehub;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HttpTransport built on HttpURLConnection, which keeps connections to each host alive and reuses
+ * them for later requests. For that to work a connection has to be handed back in a clean state,
+ * so closing a response reads whatever is left of a short body before closing it, and only drops
+ * the connection if a lot was left unread.
+ *
+ * The number of connections open to each host at the same time can be limited. Requests beyond
+ * the limit wait for a connection to be closed, for no longer than the connect timeout.
+ */
+public class URLConnectionTransport implements HttpTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+    public static final int DEFAULT_READ_TIMEOUT = 20000;
+
+    /** Most bytes read from an unfinished body to be able to reuse its connection **/
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static URLConnectionTransport defaultTransport;
+
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+    private volatile int maxConnectionsPerHost = 0;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Returns the transport shared by every OEXMLParser that has not been given one of its own.
+     */
+    public static synchronized URLConnectionTransport getDefault() {
+        if(defaultTransport == null){
+            defaultTransport = new URLConnectionTransport();
+        }
+        return defaultTransport;
+    }
+
+    /** GETTERS AND SETTERS **/
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout milliseconds to wait for a connection, 0 to wait forever.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout milliseconds to wait for data, 0 to wait forever.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Limits how many connections can be open to the same host at once. Changing the limit only
+     * affects hosts that have not been connected to yet.
+     *
+     * @param maxConnectionsPerHost the limit, or 0 (the default) for no limit.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    @Override
+    public Response get(String urlString, Map<String, String> headers) throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permit = acquirePermit(url);
+
+        try {
+            HttpURLConnection conn = (HttpURLConnection)
+                    url.openConnection();
+            conn.setReadTimeout(readTimeout);
+            conn.setConnectTimeout(connectTimeout);
+            conn.setRequestMethod("GET");
+            conn.setDoInput(true);
+            for(Map.Entry<String, String> header : headers.entrySet()){
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+            conn.connect();
+            return new ConnectionResponse(conn, permit);
+        } catch (IOException e) {
+            if(permit != null){
+                permit.release();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            if(permit != null){
+                permit.release();
+            }
+            throw e;
+        }
+    }
+
+    private Semaphore acquirePermit(URL url) throws IOException {
+        int limit = maxConnectionsPerHost;
+        if(limit <= 0){
+            return null;
+        }
+
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String host = url.getHost() + ":" + port;
+        Semaphore permit = hostPermits.get(host);
+        if(permit == null){
+            Semaphore created = new Semaphore(limit);
+            permit = hostPermits.putIfAbsent(host, created);
+            if(permit == null){
+                permit = created;
+            }
+        }
+
+        int timeout = connectTimeout;
+        try {
+            if(timeout == 0){
+                permit.acquire();
+            }
+            else if(!permit.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+                throw new SocketTimeoutException("Timed out waiting for a connection to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + host);
+        }
+        return permit;
+    }
+
+
+    /** Response read from an HttpURLConnection **/
+    private static class ConnectionResponse implements Response {
+
+        private final HttpURLConnection conn;
+        private final Semaphore permit;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private InputStream body;
+
+        ConnectionResponse(HttpURLConnection conn, Semaphore permit) {
+            this.conn = conn;
+            this.permit = permit;
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return conn.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return conn.getHeaderField(name);
+        }
+
+        @Override
+        public synchronized InputStream getBody() throws IOException {
+            if(body == null){
+                body = conn.getInputStream();
+            }
+
+            // Leave closing the stream to close(), which knows how to keep the connection
+            return new FilterInputStream(body) {
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if(!finished.compareAndSet(false, true)){
+                return;
+            }
+
+            try {
+                InputStream stream;
+                synchronized (this) {
+                    if(body != null){
+                        stream = body;
+                    }
+                    else{
+                        stream = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+                    }
+                }
+
+                if(stream == null){
+                    return;
+                }
+
+                // Read what is left so the connection can be reused
+                byte[] buffer = new byte[4096];
+                int drained = 0;
+                int read = 0;
+                while(drained < MAX_DRAIN_BYTES && (read = stream.read(buffer)) != -1){
+                    drained += read;
+                }
+                stream.close();
+
+                if(read != -1){
+                    // Too much left to be worth reading
+                    conn.disconnect();
+                }
+            } catch (IOException e) {
+                conn.disconnect();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void abort() {
+            if(!finished.compareAndSet(false, true)){
+                return;
+            }
+
+            conn.disconnect();
+            release();
+        }
+
+        private void release() {
+            if(permit != null){
+                permit.release();
+            }
+        }
+    }
+}
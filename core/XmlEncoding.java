@@ -0,0 +1,90 @@
+package com.odie.animehub;
+
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out the character encoding of an XML document from its first bytes, the way the XML
+ * spec describes: a byte order mark if there is one, otherwise the layout of the first
+ * characters and the encoding named in the <?xml ...?> declaration. Documents that don't say
+ * are UTF-8.
+ */
+final class XmlEncoding {
+
+    /** How many bytes to look at, enough for any sensible declaration **/
+    static final int PROLOG_LENGTH = 256;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final Pattern DECLARED_ENCODING = Pattern.compile("^<\\?xml[^>]*?\\sencoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._-]*)[\"']");
+
+    private final Charset charset;
+    private final int byteOrderMarkLength;
+
+    private XmlEncoding(Charset charset, int byteOrderMarkLength) {
+        this.charset = charset;
+        this.byteOrderMarkLength = byteOrderMarkLength;
+    }
+
+    /**
+     * @param prolog the first bytes of the document.
+     * @param length how many of them there are.
+     */
+    static XmlEncoding detect(byte[] prolog, int length) {
+        int b0 = length > 0 ? prolog[0] & 0xFF : -1;
+        int b1 = length > 1 ? prolog[1] & 0xFF : -1;
+        int b2 = length > 2 ? prolog[2] & 0xFF : -1;
+
+        if(b0 == 0xEF && b1 == 0xBB && b2 == 0xBF){
+            return new XmlEncoding(UTF_8, 3);
+        }
+        if(b0 == 0xFE && b1 == 0xFF){
+            return new XmlEncoding(Charset.forName("UTF-16BE"), 2);
+        }
+        if(b0 == 0xFF && b1 == 0xFE){
+            return new XmlEncoding(Charset.forName("UTF-16LE"), 2);
+        }
+
+        // "<?" without a byte order mark
+        if(b0 == 0x3C && b1 == 0x00){
+            return new XmlEncoding(Charset.forName("UTF-16LE"), 0);
+        }
+        if(b0 == 0x00 && b1 == 0x3C){
+            return new XmlEncoding(Charset.forName("UTF-16BE"), 0);
+        }
+
+        // Anything else is read as ASCII until the declaration says otherwise
+        Matcher declared = DECLARED_ENCODING.matcher(new String(prolog, 0, length, ISO_8859_1));
+        if(declared.find()){
+            try {
+                Charset charset = Charset.forName(declared.group(1));
+                if(!charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32")){
+                    return new XmlEncoding(charset, 0);
+                }
+            } catch (IllegalArgumentException e) {
+                // Unknown or unsupported, fall back to UTF-8
+            }
+        }
+        return new XmlEncoding(UTF_8, 0);
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the number of bytes of byte order mark to skip before decoding.
+     */
+    int getByteOrderMarkLength() {
+        return byteOrderMarkLength;
+    }
+
+    /**
+     * @return true if the markup is encoded as in ASCII, so tags can be found in the raw bytes.
+     */
+    boolean isAsciiCompatible() {
+        return !charset.name().startsWith("UTF-16");
+    }
+}
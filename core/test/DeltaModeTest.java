@@ -0,0 +1,75 @@
+package com.odie.animehub;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import static com.odie.animehub.TestSupport.directExecutor;
+import static com.odie.animehub.TestSupport.feed;
+import static com.odie.animehub.TestSupport.quietLogger;
+import static com.odie.animehub.TestSupport.titles;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DeltaModeTest {
+
+    private static final String URL = "http://example.com/feed";
+
+    private StubHttpTransport transport;
+    private FeedParser parser;
+
+    @Before
+    public void setUp() {
+        transport = new StubHttpTransport();
+        parser = new FeedParser(URL);
+        parser.setTransport(transport);
+        parser.setExecutor(directExecutor());
+        parser.setLogger(quietLogger());
+        parser.setRecordTag("item");
+        parser.setDeltaMode(true);
+    }
+
+    @Test
+    public void onlyNewAndChangedItemsAreReturned() throws Exception {
+        transport.addResponse(URL, feed("a", "b", "c"));
+        assertEquals("[a, b, c]", titles(parser.fetch("title").get()));
+        assertEquals("[]", titles(parser.fetch("title").get()));
+
+        transport.addResponse(URL, feed("d", "a", "b2"));
+        assertEquals("[d, b2]", titles(parser.fetch("title").get()));
+    }
+
+    @Test
+    public void failedFetchKeepsFingerprints() throws Exception {
+        transport.addResponse(URL, feed("a", "b"));
+        parser.fetch("title").get();
+
+        transport.addResponse(URL, "<rss><item><title>broken</item></rss>");
+        try {
+            parser.fetch("title").get();
+            fail("Parsing a broken feed should fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        transport.addResponse(URL, feed("a", "b", "c"));
+        assertEquals("[c]", titles(parser.fetch("title").get()));
+    }
+
+    @Test
+    public void resetReturnsEverythingAgain() throws Exception {
+        transport.addResponse(URL, feed("a", "b"));
+        parser.fetch("title").get();
+        parser.resetDelta();
+        assertEquals("[a, b]", titles(parser.fetch("title").get()));
+    }
+
+    @Test
+    public void localSourcesShareTheFingerprints() throws Exception {
+        transport.addResponse(URL, feed("a", "b"));
+        parser.fetch("title").get();
+        assertEquals("[c]", titles(parser.parse(ByteBuffer.wrap(feed("a", "b", "c").getBytes("UTF-8")), "title")));
+    }
+}
@@ -0,0 +1,71 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntityDecodingReaderTest {
+
+    @Test
+    public void htmlEntitiesAreDecoded() throws Exception {
+        assertEquals("caf\u00e9\u00a0\u2014", decode("caf&eacute;&nbsp;&mdash;"));
+    }
+
+    @Test
+    public void xmlEntitiesAndCharacterReferencesAreLeftForTheParser() throws Exception {
+        assertEquals("&lt;b&gt; &amp; &quot;&apos; &#233;&#xE9;", decode("&lt;b&gt; &amp; &quot;&apos; &#233;&#xE9;"));
+    }
+
+    @Test
+    public void unknownEntitiesAreDropped() throws Exception {
+        assertEquals("ab", decode("a&bogus;b"));
+    }
+
+    @Test
+    public void strayAmpersandsAreEscaped() throws Exception {
+        assertEquals("AT&amp;T &amp; &amp;;", decode("AT&T & &;"));
+    }
+
+    @Test
+    public void cdataSectionsAreLeftUntouched() throws Exception {
+        String cdata = "<![CDATA[Use &lt;script&gt;, AT&T &amp;lt; &#233; &eacute;]]>";
+        assertEquals("<d>" + cdata + "&amp;</d>", decode("<d>" + cdata + "&</d>"));
+    }
+
+    @Test
+    public void entitiesSplitAcrossReadsAreDecoded() throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 5000; i++){
+            input.append("x&eacute;");
+            expected.append("x\u00e9");
+        }
+        assertEquals(expected.toString(), decode(input.toString()));
+    }
+
+    @Test
+    public void singleCharacterReadsMatchBulkReads() throws Exception {
+        String input = "<a>&eacute; AT&T &amp;</a>";
+        Reader reader = new EntityDecodingReader(new StringReader(input));
+        StringBuilder output = new StringBuilder();
+        int c;
+        while((c = reader.read()) != -1){
+            output.append((char) c);
+        }
+        assertEquals(decode(input), output.toString());
+    }
+
+    static String decode(String input) throws Exception {
+        Reader reader = new EntityDecodingReader(new StringReader(input));
+        StringBuilder output = new StringBuilder();
+        char[] buffer = new char[100];
+        int count;
+        while((count = reader.read(buffer, 0, buffer.length)) != -1){
+            output.append(buffer, 0, count);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.odie.animehub.TestSupport.feed;
+import static com.odie.animehub.TestSupport.quietLogger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeedBatchTest {
+
+    private static final int FEEDS = 6;
+
+    @Test
+    public void executorThatWaitsForRoomDoesntDeadlockABatch() throws Exception {
+        ExecutorService executor = FetchExecutors.newWaitingExecutor(1, 1);
+        try {
+            assertAllFetched(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fetchesTheExecutorRejectsAreStartedAgain() throws Exception {
+        ExecutorService executor = FetchExecutors.newBoundedExecutor(1, 1);
+        try {
+            assertAllFetched(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectedFetchesAreRetriedWithoutLosingConcurrency() throws Exception {
+        final ExecutorService threads = Executors.newFixedThreadPool(4);
+        final AtomicInteger rejections = new AtomicInteger(2);
+        final AtomicInteger fetching = new AtomicInteger();
+        final AtomicInteger mostFetching = new AtomicInteger();
+        final StubHttpTransport stub = new StubHttpTransport();
+        ArrayList<FeedRequest> requests = new ArrayList<FeedRequest>();
+        for(int i = 0; i < FEEDS; i++){
+            String url = "http://example.com/" + i;
+            stub.addResponse(url, feed("item" + i));
+            requests.add(new FeedRequest(url, "title"));
+        }
+
+        FeedBatch batch = new FeedBatch();
+        batch.setMaxConcurrentFeeds(2);
+        batch.setRecordTag("item");
+        batch.setLogger(quietLogger());
+        batch.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // No room for the first fetches
+                if(rejections.getAndDecrement() > 0){
+                    throw new RejectedExecutionException("Full");
+                }
+                threads.execute(command);
+            }
+        });
+        batch.setTransport(new HttpTransport() {
+            @Override
+            public Response get(String urlString, Map<String, String> headers) throws IOException {
+                int now = fetching.incrementAndGet();
+                int most;
+                while((most = mostFetching.get()) < now && !mostFetching.compareAndSet(most, now)){
+                    // Lost the race, so look again
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    fetching.decrementAndGet();
+                }
+                return stub.get(urlString, headers);
+            }
+        });
+
+        try {
+            ArrayList<FeedResult> results = batch.fetch(requests).get(10, TimeUnit.SECONDS);
+            for(int i = 0; i < FEEDS; i++){
+                assertNull(results.get(i).getError());
+            }
+            assertEquals(2, mostFetching.get());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aBatchWaitingForItsExecutorDoesntHoldUpOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StubHttpTransport stub = new StubHttpTransport();
+        stub.addResponse("http://example.com/a", feed("a"));
+
+        FeedBatch stuck = new FeedBatch();
+        stuck.setLogger(quietLogger());
+        stuck.setTransport(stub);
+        stuck.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // Never any room
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new RejectedExecutionException("Full");
+            }
+        });
+
+        FeedBatch batch = new FeedBatch();
+        batch.setRecordTag("item");
+        batch.setLogger(quietLogger());
+        batch.setTransport(stub);
+        batch.setExecutor(TestSupport.directExecutor());
+
+        FetchFuture<ArrayList<FeedResult>> waiting = stuck.fetch(Arrays.asList(new FeedRequest("http://example.com/a", "title")));
+        try {
+            Thread.sleep(50);
+            ArrayList<FeedResult> results = batch.fetch(Arrays.asList(new FeedRequest("http://example.com/a", "title")))
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals("[a]", TestSupport.titles(results.get(0).getResults()));
+        } finally {
+            waiting.cancel(true);
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void mergeKeepsTheNewestCopyOfAnItem() {
+        FeedRequest request = new FeedRequest("http://example.com/", "title", "guid", "pubDate");
+        ArrayList<FeedResult> results = new ArrayList<FeedResult>();
+        results.add(new FeedResult(request, items(item("old", "x", "Mon, 01 Jan 2024 00:00:00 GMT"),
+                item("other", "y", "Tue, 02 Jan 2024 00:00:00 GMT")), null));
+        results.add(new FeedResult(request, items(item("new", "x", "Wed, 03 Jan 2024 00:00:00 GMT")), null));
+
+        assertEquals("[new, other]", TestSupport.titles(FeedBatch.merge(results)));
+    }
+
+    @SafeVarargs
+    private static ArrayList<HashMap<String, String>> items(HashMap<String, String>... items) {
+        return new ArrayList<HashMap<String, String>>(Arrays.asList(items));
+    }
+
+    private static HashMap<String, String> item(String title, String guid, String pubDate) {
+        HashMap<String, String> item = new HashMap<String, String>();
+        item.put("title", title);
+        item.put("guid", guid);
+        item.put("pubDate", pubDate);
+        return item;
+    }
+
+    /**
+     * Fetches more feeds, more of them at a time, than the executor can hold.
+     */
+    private static void assertAllFetched(ExecutorService executor) throws Exception {
+        final StubHttpTransport stub = new StubHttpTransport();
+        ArrayList<FeedRequest> requests = new ArrayList<FeedRequest>();
+        for(int i = 0; i < FEEDS; i++){
+            String url = "http://example.com/" + i;
+            stub.addResponse(url, feed("item" + i));
+            requests.add(new FeedRequest(url, "title"));
+        }
+
+        FeedBatch batch = new FeedBatch();
+        batch.setMaxConcurrentFeeds(4);
+        batch.setRecordTag("item");
+        batch.setExecutor(executor);
+        batch.setLogger(quietLogger());
+        batch.setTransport(new HttpTransport() {
+            @Override
+            public Response get(String urlString, Map<String, String> headers) throws IOException {
+                // Slow enough for the executor to fill up
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return stub.get(urlString, headers);
+            }
+        });
+
+        ArrayList<FeedResult> results = batch.fetch(requests).get(10, TimeUnit.SECONDS);
+        assertEquals(FEEDS, results.size());
+        for(int i = 0; i < FEEDS; i++){
+            assertNull(results.get(i).getError());
+            assertEquals("[item" + i + "]", TestSupport.titles(results.get(i).getResults()));
+        }
+    }
+}
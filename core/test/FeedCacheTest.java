@@ -0,0 +1,263 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeedCacheTest {
+
+    private static final String URL = "http://example.com/feed";
+
+    @Test
+    public void changingResultsLeavesTheCacheAlone() throws Exception {
+        FeedCache cache = new FeedCache();
+        cache.setTimeToLive(1, TimeUnit.HOURS);
+        String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+
+        ArrayList<HashMap<String, String>> first = cache.fetch(key, loader(key, "a"));
+        first.get(0).put("title", "changed");
+        first.clear();
+
+        ArrayList<HashMap<String, String>> second = cache.fetch(key, loader(key, "b"));
+        assertEquals("[a]", TestSupport.titles(second));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void sharedFetchesGoAheadWhenTheFetchTheyWaitOnIsAbandoned() throws Exception {
+        final FeedCache cache = new FeedCache();
+        final String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<ArrayList<HashMap<String, String>>> leader = threads.submit(new Callable<ArrayList<HashMap<String, String>>>() {
+                @Override
+                public ArrayList<HashMap<String, String>> call() throws Exception {
+                    return cache.fetch(key, new FeedCache.Loader() {
+                        @Override
+                        public FeedCache.Entry load(String key, FeedCache.Entry cached) throws Exception {
+                            started.countDown();
+                            release.await();
+                            throw new CancellationException("abandoned");
+                        }
+                    });
+                }
+            });
+            started.await();
+
+            Future<ArrayList<HashMap<String, String>>> follower = threads.submit(new Callable<ArrayList<HashMap<String, String>>>() {
+                @Override
+                public ArrayList<HashMap<String, String>> call() throws Exception {
+                    return cache.fetch(key, loader(key, "a"));
+                }
+            });
+            while(cache.getSharedCount() == 0){
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertEquals("[a]", TestSupport.titles(follower.get(5, TimeUnit.SECONDS)));
+            try {
+                leader.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CancellationException);
+            }
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedFetchesStopWaitingWhenTheirCallerIsCancelled() throws Exception {
+        final FeedCache cache = new FeedCache();
+        final String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Void> caller = new CompletableFuture<Void>();
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            threads.submit(new Callable<ArrayList<HashMap<String, String>>>() {
+                @Override
+                public ArrayList<HashMap<String, String>> call() throws Exception {
+                    return cache.fetch(key, new FeedCache.Loader() {
+                        @Override
+                        public FeedCache.Entry load(String key, FeedCache.Entry cached) throws Exception {
+                            started.countDown();
+                            release.await();
+                            return loader(key, "a").load(key, cached);
+                        }
+                    });
+                }
+            });
+            started.await();
+
+            Future<ArrayList<HashMap<String, String>>> follower = threads.submit(new Callable<ArrayList<HashMap<String, String>>>() {
+                @Override
+                public ArrayList<HashMap<String, String>> call() throws Exception {
+                    return cache.fetch(key, caller, loader(key, "b"));
+                }
+            });
+            while(cache.getSharedCount() == 0){
+                Thread.sleep(10);
+            }
+            caller.cancel(true);
+
+            try {
+                follower.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof CancellationException);
+            }
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void entriesOnDiskAreReadBackByANewCache() throws Exception {
+        File directory = File.createTempFile("feedcache", "");
+        directory.delete();
+        String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+        FeedCache cache = new FeedCache(10, directory);
+        cache.setTimeToLive(1, TimeUnit.HOURS);
+        try {
+            cache.fetch(key, loader(key, "a"));
+
+            FeedCache reopened = new FeedCache(10, directory);
+            reopened.setTimeToLive(1, TimeUnit.HOURS);
+            assertEquals("[a]", TestSupport.titles(reopened.fetch(key, loader(key, "b"))));
+            assertEquals(1, reopened.getHitCount());
+        } finally {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void revalidatedEntriesAreWrittenBackToDisk() throws Exception {
+        File directory = File.createTempFile("feedcache", "");
+        directory.delete();
+        String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+        FeedCache cache = new FeedCache(10, directory);
+        try {
+            cache.fetch(key, loader(key, "a"));
+            Thread.sleep(5);
+            final long revalidatedAt = System.currentTimeMillis();
+            cache.fetch(key, new FeedCache.Loader() {
+                @Override
+                public FeedCache.Entry load(String key, FeedCache.Entry cached) {
+                    return cached.revalidated("\"etag2\"", null);
+                }
+            });
+            assertEquals(1, cache.getRevalidatedCount());
+
+            final ArrayList<FeedCache.Entry> onDisk = new ArrayList<FeedCache.Entry>();
+            FeedCache reopened = new FeedCache(10, directory);
+            assertEquals("[a]", TestSupport.titles(reopened.fetch(key, new FeedCache.Loader() {
+                @Override
+                public FeedCache.Entry load(String key, FeedCache.Entry cached) {
+                    onDisk.add(cached);
+                    return cached.revalidated(null, null);
+                }
+            })));
+            assertEquals("\"etag2\"", onDisk.get(0).eTag);
+            assertTrue(onDisk.get(0).storedAt >= revalidatedAt);
+        } finally {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void serializedObjectsOnDiskAreNotRead() throws Exception {
+        File directory = File.createTempFile("feedcache", "");
+        directory.delete();
+        String key = FeedCache.key(URL, null, null, "item", 0, false, "title");
+        FeedCache cache = new FeedCache(10, directory);
+        cache.setTimeToLive(1, TimeUnit.HOURS);
+        FeedLogger logger = FeedParser.getDefaultLogger();
+        try {
+            cache.fetch(key, loader(key, "a"));
+            FeedParser.setDefaultLogger(TestSupport.quietLogger());
+            File file = directory.listFiles()[0];
+            ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file));
+            try {
+                output.writeObject(new HashMap<String, String>());
+            } finally {
+                output.close();
+            }
+
+            FeedCache reopened = new FeedCache(10, directory);
+            reopened.setTimeToLive(1, TimeUnit.HOURS);
+            assertEquals("[b]", TestSupport.titles(reopened.fetch(key, loader(key, "b"))));
+        } finally {
+            FeedParser.setDefaultLogger(logger);
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void fetchesWithAPasswordStayOffDisk() throws Exception {
+        File directory = File.createTempFile("feedcache", "");
+        directory.delete();
+        FeedCache cache = new FeedCache(10, directory);
+        try {
+            String key = FeedCache.key(URL, "user", "secret", "item", 0, false, "title");
+            assertEquals(key, FeedCache.key(URL, "user", "secret", "item", 0, false, "title"));
+            assertNotEquals(key, FeedCache.key(URL, "user", "other", "item", 0, false, "title"));
+            assertFalse(key.contains("secret"));
+
+            cache.fetch(key, loader(key, "a"));
+            assertEquals(0, directory.listFiles().length);
+
+            String publicKey = FeedCache.key(URL, null, null, "item", 0, false, "title");
+            cache.fetch(publicKey, loader(publicKey, "a"));
+            assertEquals(1, directory.listFiles().length);
+        } finally {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    /**
+     * @return a loader answering with an entry holding an item for each title.
+     */
+    private static FeedCache.Loader loader(final String key, final String... titles) {
+        return new FeedCache.Loader() {
+            @Override
+            public FeedCache.Entry load(String ignored, FeedCache.Entry cached) {
+                ArrayList<HashMap<String, String>> results = new ArrayList<HashMap<String, String>>();
+                for(String title : titles){
+                    HashMap<String, String> item = new HashMap<String, String>();
+                    item.put("title", title);
+                    results.add(item);
+                }
+                return new FeedCache.Entry(key, "\"etag\"", null, results);
+            }
+        };
+    }
+}
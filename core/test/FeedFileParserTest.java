@@ -0,0 +1,82 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.odie.animehub.TestSupport.quietLogger;
+import static org.junit.Assert.assertEquals;
+
+public class FeedFileParserTest {
+
+    private static final String XML = "<rss><channel><title>C</title>"
+            + "<item><title>a</title><link>http://example.com/a</link><description><p>A</p></description></item>"
+            + "<item><title>b</title><link>http://example.com/b</link><description><p>B</p></description></item>"
+            + "<item><title>c</title><link>http://example.com/c</link><description><p>C</p></description></item>"
+            + "</channel></rss>";
+
+    @Test
+    public void chunksGiveTheSameValuesAsASinglePass() throws Exception {
+        assertSameAsSinglePass(true, "title", "item/link", "item/description/p");
+    }
+
+    @Test
+    public void fieldsNeedingTheTagsAroundRecordsGiveTheSameValuesAsASinglePass() throws Exception {
+        assertSameAsSinglePass(false, "/rss/channel/item/title", "channel/item/link", "*/title");
+    }
+
+    /**
+     * @param chunked whether the file should have been cut into chunks.
+     */
+    private static void assertSameAsSinglePass(boolean chunked, String... fields) throws Exception {
+        File file = File.createTempFile("feed", ".xml");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(XML.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+
+            FeedParser parser = new FeedParser(null);
+            parser.setRecordTag("item");
+            ArrayList<HashMap<String, String>> expected = parser.parse(file.toPath(), fields);
+            assertEquals(3, expected.size());
+            assertEquals(fields.length, expected.get(2).size());
+
+            CountingPool pool = new CountingPool();
+            FeedFileParser fileParser = new FeedFileParser();
+            fileParser.setChunkSize(1);
+            fileParser.setPool(pool);
+            fileParser.setLogger(quietLogger());
+            try {
+                assertEquals(expected, fileParser.parse(file, fields));
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals(chunked ? 3 : 0, pool.submitted.get());
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    /** Counts the chunks handed to it **/
+    private static class CountingPool extends ForkJoinPool {
+
+        final AtomicInteger submitted = new AtomicInteger();
+
+        @Override
+        public <T> ForkJoinTask<T> submit(Callable<T> task) {
+            submitted.incrementAndGet();
+            return super.submit(task);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.odie.animehub;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.odie.animehub.TestSupport.directExecutor;
+import static com.odie.animehub.TestSupport.feed;
+import static com.odie.animehub.TestSupport.quietLogger;
+import static org.junit.Assert.assertEquals;
+
+public class FeedParserTest {
+
+    private static final String URL = "http://example.com/feed";
+
+    private StubHttpTransport transport;
+    private FeedParser parser;
+
+    @Before
+    public void setUp() {
+        transport = new StubHttpTransport();
+        transport.addResponse(URL, feed("a", "b"));
+        parser = new FeedParser(URL);
+        parser.setTransport(transport);
+        parser.setExecutor(directExecutor());
+        parser.setLogger(quietLogger());
+        parser.setRecordTag("item");
+    }
+
+    @Test
+    public void everyFetchFallsBackToTheDefaultFields() throws Exception {
+        ArrayList<HashMap<String, String>> fetched = parser.fetch().get();
+        assertEquals("{link=http://example.com/a, title=a}", fetched.get(0).toString());
+
+        final ArrayList<HashMap<String, String>> streamed = new ArrayList<HashMap<String, String>>();
+        parser.fetchItems(new FeedItemListener() {
+            @Override
+            public void onItem(HashMap<String, String> item) {
+                streamed.add(item);
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+
+            @Override
+            public void onEnd() {
+            }
+        }).get();
+        assertEquals(fetched, streamed);
+
+        ArrayList<FeedRecord> records = parser.fetchRecords().get();
+        assertEquals(fetched.get(1), records.get(1).toHashMap());
+        assertEquals(FeedParser.fieldsOrDefault().length, records.get(0).getSchema().size());
+    }
+
+    @Test
+    public void repeatedFetchesWithoutARecordTagDontPileUp() throws Exception {
+        parser.setRecordTag(null);
+        for(int i = 0; i < 3; i++){
+            assertEquals("[Channel, a, b]", TestSupport.titles(parser.fetch().get()));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.odie.animehub.TestSupport.feed;
+import static com.odie.animehub.TestSupport.quietLogger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeedSchedulerTest {
+
+    private static final int FEEDS = 6;
+
+    @Test
+    public void executorThatWaitsForRoomDoesntDeadlockTheScheduler() throws Exception {
+        final StubHttpTransport stub = new StubHttpTransport();
+        final CountDownLatch polled = new CountDownLatch(FEEDS);
+        FeedScheduler scheduler = new FeedScheduler(new FeedUpdateListener() {
+            @Override
+            public void onUpdate(FeedRequest request, ArrayList<HashMap<String, String>> newItems, ArrayList<HashMap<String, String>> items) {
+                polled.countDown();
+            }
+
+            @Override
+            public void onError(FeedRequest request, Throwable error) {
+            }
+        });
+
+        ExecutorService executor = FetchExecutors.newWaitingExecutor(1, 1);
+        scheduler.setExecutor(executor);
+        scheduler.setMaxFetchesPerMinute(60000);
+        scheduler.setRecordTag("item");
+        scheduler.setLogger(quietLogger());
+        scheduler.setTransport(new HttpTransport() {
+            @Override
+            public Response get(String urlString, Map<String, String> headers) throws IOException {
+                // Slow enough for the executor to fill up
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return stub.get(urlString, headers);
+            }
+        });
+
+        try {
+            for(int i = 0; i < FEEDS; i++){
+                String url = "http://example.com/" + i;
+                stub.addResponse(url, feed("item" + i));
+                scheduler.add(new FeedRequest(url, "title", "link"));
+            }
+            scheduler.start();
+
+            assertTrue(polled.await(10, TimeUnit.SECONDS));
+        } finally {
+            scheduler.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void channelHintsAreReadWithoutBecomingAnItem() throws Exception {
+        assertHintsRead(null);
+    }
+
+    @Test
+    public void channelHintsAreReadWithARecordTag() throws Exception {
+        assertHintsRead("item");
+    }
+
+    private static void assertHintsRead(String recordTag) throws Exception {
+        StubHttpTransport stub = new StubHttpTransport();
+        String url = "http://example.com/hints";
+        stub.addResponse(url, feed("a", "b").replace("<title>Channel</title>", "<title>Channel</title><ttl>120</ttl>"));
+
+        final LinkedBlockingQueue<String> updates = new LinkedBlockingQueue<String>();
+        FeedScheduler scheduler = new FeedScheduler(new FeedUpdateListener() {
+            @Override
+            public void onUpdate(FeedRequest request, ArrayList<HashMap<String, String>> newItems, ArrayList<HashMap<String, String>> items) {
+                updates.add(TestSupport.titles(newItems) + " " + newItems.get(0).keySet());
+            }
+
+            @Override
+            public void onError(FeedRequest request, Throwable error) {
+                updates.add(error.toString());
+            }
+        });
+        scheduler.setRecordTag(recordTag);
+        scheduler.setExecutor(TestSupport.directExecutor());
+        scheduler.setLogger(quietLogger());
+        scheduler.setTransport(stub);
+
+        FeedRequest request = new FeedRequest(url, "title", "link");
+        try {
+            scheduler.add(request);
+            scheduler.start();
+
+            assertEquals("[a, b] [link, title]", updates.poll(10, TimeUnit.SECONDS));
+            assertEquals(TimeUnit.MINUTES.toMillis(120), scheduler.getIntervalMillis(request));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void notModifiedPollsAreCountedAndRemovedFeedsLeaveTheCache() throws Exception {
+        final String url = "http://example.com/etag";
+        final StubHttpTransport changed = new StubHttpTransport();
+        HashMap<String, String> eTag = new HashMap<String, String>();
+        eTag.put("ETag", "v1");
+        changed.addResponse(url, 200, eTag, feed("a"));
+        final StubHttpTransport notModified = new StubHttpTransport();
+        notModified.addResponse(url, 304, eTag, "");
+
+        final LinkedBlockingQueue<Map<String, String>> requests = new LinkedBlockingQueue<Map<String, String>>();
+        FeedScheduler scheduler = new FeedScheduler(new FeedUpdateListener() {
+            @Override
+            public void onUpdate(FeedRequest request, ArrayList<HashMap<String, String>> newItems, ArrayList<HashMap<String, String>> items) {
+            }
+
+            @Override
+            public void onError(FeedRequest request, Throwable error) {
+            }
+        });
+        scheduler.setMinIntervalMillis(1);
+        scheduler.setInitialIntervalMillis(1);
+        scheduler.setMaxFetchesPerMinute(60000);
+        scheduler.setJitter(0);
+        scheduler.setLogger(quietLogger());
+        scheduler.setTransport(new HttpTransport() {
+            @Override
+            public Response get(String urlString, Map<String, String> headers) throws IOException {
+                requests.add(headers);
+                return "v1".equals(headers.get("If-None-Match")) ? notModified.get(urlString, headers) : changed.get(urlString, headers);
+            }
+        });
+
+        FeedRequest request = new FeedRequest(url, "title", "link");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        scheduler.setExecutor(executor);
+        scheduler.add(request);
+        scheduler.start();
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while(scheduler.getNotModifiedCount(request) < 2 && System.currentTimeMillis() < deadline){
+                Thread.sleep(5);
+            }
+            assertTrue(scheduler.getNotModifiedCount(request) >= 2);
+        } finally {
+            scheduler.stop();
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        // Back from scratch, without the ETag of the removed feed
+        scheduler.remove(request);
+        requests.clear();
+        executor = Executors.newSingleThreadExecutor();
+        scheduler.setExecutor(executor);
+        scheduler.add(request);
+        scheduler.start();
+        try {
+            assertNull(requests.poll(10, TimeUnit.SECONDS).get("If-None-Match"));
+        } finally {
+            scheduler.stop();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.odie.animehub.TestSupport.feed;
+import static com.odie.animehub.TestSupport.quietLogger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FetchExecutorsTest {
+
+    private static final String URL = "http://example.com/feed";
+
+    @Test
+    public void fetchesAreRejectedRatherThanWaitingWhenTheExecutorIsFull() throws Exception {
+        ExecutorService executor = FetchExecutors.newBoundedExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // One fetch running and one waiting fill the executor
+            for(int i = 0; i < 2; i++){
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            StubHttpTransport transport = new StubHttpTransport();
+            transport.addResponse(URL, feed("a"));
+            FeedParser parser = new FeedParser(URL);
+            parser.setTransport(transport);
+            parser.setExecutor(executor);
+            parser.setLogger(quietLogger());
+            parser.setRecordTag("item");
+
+            FetchFuture<ArrayList<HashMap<String, String>>> future = parser.fetch("title");
+            assertTrue(future.isCompletedExceptionally());
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            // Once there is room again, fetches go through
+            release.countDown();
+            assertEquals("[a]", TestSupport.titles(waitForRoom(parser).get(5, TimeUnit.SECONDS)));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a fetch, retried until the executor has room for it.
+     */
+    private static FetchFuture<ArrayList<HashMap<String, String>>> waitForRoom(FeedParser parser) throws InterruptedException {
+        while(true){
+            FetchFuture<ArrayList<HashMap<String, String>>> future = parser.fetch("title");
+            if(!future.isCompletedExceptionally()){
+                return future;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FieldCaptureTest {
+
+    private static final String FEED = "<rss xmlns:m=\"http://search.yahoo.com/mrss/\"><channel><title>Channel</title>"
+            + "<item><title>One</title><enclosure url=\"http://a/1.mp3\"/><m:thumbnail url=\"http://a/1.jpg\"/></item>"
+            + "<item><title> </title><description><b>bold</b> text</description></item>"
+            + "</channel></rss>";
+
+    @Test
+    public void bareNameMatchesAnyTag() throws Exception {
+        ArrayList<HashMap<String, String>> items = parse(FEED, false, "title");
+        assertEquals(2, items.size());
+        assertEquals("One", items.get(0).get("title"));
+    }
+
+    @Test
+    public void pathOnlyMatchesDirectChildren() throws Exception {
+        ArrayList<String> values = collect(FEED, false, "item/title");
+        assertEquals("[One]", values.toString());
+    }
+
+    @Test
+    public void anchoredPathStartsAtTheRoot() throws Exception {
+        assertEquals("[Channel]", collect(FEED, false, "/rss/channel/title").toString());
+        assertEquals("[]", collect(FEED, false, "/channel/title").toString());
+    }
+
+    @Test
+    public void attributesAndWildcards() throws Exception {
+        assertEquals("[http://a/1.mp3]", collect(FEED, false, "enclosure@url").toString());
+        assertEquals("[http://a/1.mp3, http://a/1.jpg]", collect(FEED, false, "item/*@url").toString());
+    }
+
+    @Test
+    public void namespacedFieldMatchesAnyPrefix() throws Exception {
+        assertEquals("[http://a/1.jpg]", collect(FEED, true, "media:thumbnail@url").toString());
+        assertEquals("[http://a/1.jpg]", collect(FEED, true, "{http://search.yahoo.com/mrss/}thumbnail@url").toString());
+        assertEquals("[]", collect(FEED, false, "media:thumbnail@url").toString());
+    }
+
+    @Test
+    public void onlyTextDirectlyInsideIsKept() throws Exception {
+        ArrayList<HashMap<String, String>> items = parse(FEED, false, "title", "description");
+        assertFalse(items.get(1).containsKey("title"));
+        assertEquals(" text", items.get(1).get("description"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPrefixIsRejectedWithNamespaces() throws Exception {
+        collect(FEED, true, "nope:thing");
+    }
+
+    private static ArrayList<HashMap<String, String>> parse(String xml, boolean namespaceAware, String... fields) throws Exception {
+        XmlPullParser myParser = PullParsers.obtain(null, new StringReader(xml), namespaceAware);
+        try {
+            return FeedParser.parseXMLRecords(myParser, null, fields);
+        } finally {
+            PullParsers.recycle(null, myParser);
+        }
+    }
+
+    /**
+     * @return every value of the one field, wherever it is in the document, leaving out the
+     *         tags that had none.
+     */
+    private static ArrayList<String> collect(String xml, boolean namespaceAware, String field) throws Exception {
+        final ArrayList<String> values = new ArrayList<String>();
+        XmlPullParser myParser = PullParsers.obtain(null, new StringReader(xml), namespaceAware);
+        try {
+            FieldCapture capture = new FieldCapture(myParser, new FieldMatcher(field), new FieldCapture.FieldSink() {
+                @Override
+                public void onField(int index, String value) {
+                    if(value != null){
+                        values.add(value);
+                    }
+                }
+            });
+
+            int event = myParser.getEventType();
+            while(event != XmlPullParser.END_DOCUMENT){
+                if(event == XmlPullParser.START_TAG){
+                    capture.startTag(myParser);
+                }
+                else if(event == XmlPullParser.TEXT){
+                    capture.text(myParser);
+                }
+                else if(event == XmlPullParser.END_TAG){
+                    capture.endTag(myParser);
+                }
+                event = myParser.next();
+            }
+        } finally {
+            PullParsers.recycle(null, myParser);
+        }
+        return values;
+    }
+}
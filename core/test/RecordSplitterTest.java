@@ -0,0 +1,71 @@
+package com.odie.animehub;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordSplitterTest {
+
+    @Test
+    public void chunksHoldWholeRecords() throws Exception {
+        String xml = "<rss><channel><title>C</title><item>1</item><item>2</item><item>3</item></channel></rss>";
+        ArrayList<String> chunks = new ArrayList<String>();
+        assertTrue(split(xml, null, 1, chunks));
+        assertEquals("[<item>1</item>, <item>2</item>, <item>3</item>]", chunks.toString());
+
+        chunks.clear();
+        assertTrue(split(xml, null, 1000, chunks));
+        assertEquals("[<item>1</item><item>2</item><item>3</item>]", chunks.toString());
+    }
+
+    @Test
+    public void recordTagsInCommentsCDataAndAttributesAreIgnored() throws Exception {
+        String xml = "<!DOCTYPE rss [<!ENTITY x \"<item>\">]><rss><!-- <item> --><entry a=\"</entry>\">"
+                + "<![CDATA[</entry>]]><?pi <entry>?></entry><entry/></rss>";
+        ArrayList<String> chunks = new ArrayList<String>();
+        assertTrue(split(xml, null, 1, chunks));
+        assertEquals("[<entry a=\"</entry>\"><![CDATA[</entry>]]><?pi <entry>?></entry>, <entry/>]", chunks.toString());
+    }
+
+    @Test
+    public void nestedRecordsStayInTheirParent() throws Exception {
+        String xml = "<root><node><node>a</node></node><node>b</node></root>";
+        ArrayList<String> chunks = new ArrayList<String>();
+        assertTrue(split(xml, "node", 1, chunks));
+        assertEquals("[<node><node>a</node></node>, <node>b</node>]", chunks.toString());
+    }
+
+    @Test
+    public void truncatedFileIsNotSplit() throws Exception {
+        assertFalse(split("<rss><item>1</item><item>2", null, 1, new ArrayList<String>()));
+        assertFalse(split("<rss><item>1</item><!-- never closed", null, 1, new ArrayList<String>()));
+    }
+
+    private static boolean split(String xml, String recordTag, long chunkSize, final ArrayList<String> chunks) throws Exception {
+        File file = File.createTempFile("splitter", ".xml");
+        try {
+            final byte[] bytes = xml.getBytes("UTF-8");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+
+            return new RecordSplitter(new MappedFile(file), recordTag).split(chunkSize, new RecordSplitter.ChunkSink() {
+                @Override
+                public void onChunk(long start, long end) {
+                    chunks.add(new String(bytes, (int) start, (int) (end - start)));
+                }
+            });
+        } finally {
+            file.delete();
+        }
+    }
+}
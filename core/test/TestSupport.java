@@ -0,0 +1,65 @@
+package com.odie.animehub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Bits shared by the tests.
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    /**
+     * @return an executor running each task on the submitting thread.
+     */
+    static Executor directExecutor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+    }
+
+    /**
+     * @return a logger that drops everything, for tests that fail fetches on purpose.
+     */
+    static FeedLogger quietLogger() {
+        return new FeedLogger() {
+            @Override
+            public void debug(String tag, String message) {
+            }
+
+            @Override
+            public void error(String tag, String message, Throwable error) {
+            }
+        };
+    }
+
+    /**
+     * @return an RSS feed with an item for each title, each with a link made from the title.
+     */
+    static String feed(String... titles) {
+        StringBuilder xml = new StringBuilder("<rss><channel><title>Channel</title>");
+        for(String title : titles){
+            xml.append("<item><title>").append(title).append("</title><link>http://example.com/")
+                    .append(title).append("</link></item>");
+        }
+        return xml.append("</channel></rss>").toString();
+    }
+
+    /**
+     * @return the titles of the items, in order.
+     */
+    static String titles(List<HashMap<String, String>> items) {
+        ArrayList<String> titles = new ArrayList<String>();
+        for(HashMap<String, String> item : items){
+            titles.add(item.get("title"));
+        }
+        return titles.toString();
+    }
+}